@@ -0,0 +1,269 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-context admission control: token buckets per client IP and per session cookie,
+ * plus a cap on requests running at once. Anything over a limit gets 429 with
+ * Retry-After before the handler (and its DB connection or password hash) is reached.
+ *
+ * Each bucket is a single AtomicLong holding the "theoretical arrival time" of the
+ * next request (GCRA): admitting is one CAS, with no lock and no refill thread. A
+ * bucket whose time has passed is full again, so a sweeper simply drops those; a map
+ * that still reaches limits.maxBuckets sends new clients through one shared overflow
+ * bucket instead of growing. The concurrency cap is split over per-core shards so
+ * threads do not all CAS the same counter.
+ *
+ * Limits per context come from {@link #defaults(String)} and can be overridden with
+ * limits.&lt;context&gt;.ipRate / ipBurst / sessionRate / sessionBurst / concurrency
+ * (rates per second, 0 = off; context is e.g. "login", "events_data").
+ */
+public final class AdmissionFilter extends Filter {
+
+    private static final boolean ENABLED = !"false".equals(System.getProperty("limits.enabled"));
+    private static final int MAX_BUCKETS = Integer.getInteger("limits.maxBuckets", 50_000);
+    private static final long SWEEP_SECONDS = Long.getLong("limits.sweepSeconds", 30);
+    private static final boolean TRUST_FORWARDED_FOR = Boolean.getBoolean("limits.trustForwardedFor");
+
+    private static final List<AdmissionFilter> ALL = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService SWEEPER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "admission-sweeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        SWEEPER.scheduleWithFixedDelay(AdmissionFilter::sweepAll, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /** Limits for one context. */
+    public static final class Limits {
+        final double ipRate;
+        final int ipBurst;
+        final double sessionRate;
+        final int sessionBurst;
+        final int concurrency;
+
+        public Limits(double ipRate, int ipBurst, double sessionRate, int sessionBurst, int concurrency) {
+            this.ipRate = ipRate;
+            this.ipBurst = ipBurst;
+            this.sessionRate = sessionRate;
+            this.sessionBurst = sessionBurst;
+            this.concurrency = concurrency;
+        }
+    }
+
+    /** Built-in limits: tight on login/signup (password guessing), loose on reads. */
+    static Limits defaults(String name) {
+        switch (name) {
+            case "login":        return new Limits(2, 10, 0, 0, 64);
+            case "signup":       return new Limits(1, 5, 0, 0, 32);
+            case "register":     return new Limits(20, 40, 5, 10, 128);
+            case "add_event":    return new Limits(5, 10, 2, 5, 16);
+            case "admin_import": return new Limits(1, 2, 0.2, 2, 2);
+            case "admin_export": return new Limits(1, 5, 1, 5, 4);
+            default:             return new Limits(100, 200, 50, 100, 0);
+        }
+    }
+
+    private final String name;
+    private final long ipInterval;       // nanos per token, 0 = no limit
+    private final long ipTolerance;      // nanos of burst
+    private final long sessionInterval;
+    private final long sessionTolerance;
+    private final ShardedLimit concurrency;
+
+    private final ConcurrentHashMap<String, AtomicLong> ipBuckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> sessionBuckets = new ConcurrentHashMap<>();
+    private final AtomicLong ipOverflow = new AtomicLong(System.nanoTime());
+    private final AtomicLong sessionOverflow = new AtomicLong(System.nanoTime());
+
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejectedRate = new LongAdder();
+    private final LongAdder rejectedBusy = new LongAdder();
+    private final LongAdder overflowed = new LongAdder();
+
+    /** Filter for a context path ("/" is "static"), with limits from defaults and limits.* properties. */
+    public static AdmissionFilter forContext(String path) {
+        String name = path.equals("/") ? "static" : path.substring(1).replace('/', '_').replace('-', '_');
+        Limits d = defaults(name);
+        String p = "limits." + name + ".";
+        Limits limits = new Limits(
+                Double.parseDouble(System.getProperty(p + "ipRate", String.valueOf(d.ipRate))),
+                Integer.getInteger(p + "ipBurst", d.ipBurst),
+                Double.parseDouble(System.getProperty(p + "sessionRate", String.valueOf(d.sessionRate))),
+                Integer.getInteger(p + "sessionBurst", d.sessionBurst),
+                Integer.getInteger(p + "concurrency", d.concurrency));
+        return new AdmissionFilter(name, limits);
+    }
+
+    public AdmissionFilter(String name, Limits limits) {
+        this.name = name;
+        this.ipInterval = interval(limits.ipRate);
+        this.ipTolerance = ipInterval * Math.max(1, limits.ipBurst);
+        this.sessionInterval = interval(limits.sessionRate);
+        this.sessionTolerance = sessionInterval * Math.max(1, limits.sessionBurst);
+        this.concurrency = limits.concurrency > 0 ? new ShardedLimit(limits.concurrency) : null;
+        ALL.add(this);
+    }
+
+    private static long interval(double perSecond) {
+        return perSecond > 0 ? (long) (1e9 / perSecond) : 0;
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        if (!ENABLED) {
+            chain.doFilter(exchange);
+            return;
+        }
+        long now = System.nanoTime();
+        long wait = 0;
+        if (ipInterval > 0) {
+            wait = take(ipBuckets, ipOverflow, clientIp(exchange), ipInterval, ipTolerance, now);
+        }
+        if (wait == 0 && sessionInterval > 0) {
+            String sid = SessionStore.cookieValue(exchange.getRequestHeaders().get("Cookie"));
+            if (sid != null) wait = take(sessionBuckets, sessionOverflow, sid, sessionInterval, sessionTolerance, now);
+        }
+        if (wait > 0) {
+            rejectedRate.increment();
+            reject(exchange, TimeUnit.NANOSECONDS.toSeconds(wait) + 1);
+            return;
+        }
+
+        int shard = concurrency != null ? concurrency.tryAcquire() : -1;
+        if (concurrency != null && shard < 0) {
+            rejectedBusy.increment();
+            reject(exchange, 1);
+            return;
+        }
+        admitted.increment();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            if (shard >= 0) concurrency.release(shard);
+        }
+    }
+
+    @Override
+    public String description() {
+        return "Admission control for " + name;
+    }
+
+    // ----- Token buckets (GCRA) -----
+
+    /** 0 if admitted, else nanos until a token is available. */
+    private long take(ConcurrentHashMap<String, AtomicLong> buckets, AtomicLong overflow,
+                      String key, long interval, long tolerance, long now) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= MAX_BUCKETS) {
+                // too many clients tracked: new ones share one bucket until the sweeper frees room
+                overflowed.increment();
+                bucket = overflow;
+            } else {
+                bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            }
+        }
+        while (true) {
+            long tat = bucket.get();
+            long next = Math.max(tat, now) + interval;
+            long excess = next - now - tolerance;
+            if (excess > 0) return excess;
+            if (bucket.compareAndSet(tat, next)) return 0;
+        }
+    }
+
+    private static void sweepAll() {
+        long now = System.nanoTime();
+        for (AdmissionFilter f : ALL) {
+            // a bucket whose arrival time has passed is full again: same as no bucket
+            f.ipBuckets.values().removeIf(b -> b.get() - now <= 0);
+            f.sessionBuckets.values().removeIf(b -> b.get() - now <= 0);
+        }
+    }
+
+    private static String clientIp(HttpExchange exchange) {
+        if (TRUST_FORWARDED_FOR) {
+            String fwd = exchange.getRequestHeaders().getFirst("X-Forwarded-For");
+            if (fwd != null && !fwd.isEmpty()) {
+                int comma = fwd.indexOf(',');
+                return (comma < 0 ? fwd : fwd.substring(0, comma)).trim();
+            }
+        }
+        return exchange.getRemoteAddress().getAddress().getHostAddress();
+    }
+
+    private static void reject(HttpExchange exchange, long retryAfterSeconds) throws IOException {
+        exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+        Responses.text(exchange, 429, "Too Many Requests");
+    }
+
+    // ----- Concurrency limit -----
+
+    /** A permit count split over shards; a thread starts at its own shard and moves on when that is full. */
+    static final class ShardedLimit {
+        private static final int PAD = 16; // one shard per 64-byte cache line
+
+        private final int shards;
+        private final int[] capacity;
+        private final AtomicIntegerArray used;
+
+        ShardedLimit(int limit) {
+            int cores = Runtime.getRuntime().availableProcessors();
+            this.shards = Math.max(1, Math.min(limit, cores));
+            this.capacity = new int[shards];
+            for (int i = 0; i < shards; i++) {
+                capacity[i] = limit / shards + (i < limit % shards ? 1 : 0);
+            }
+            this.used = new AtomicIntegerArray(shards * PAD);
+        }
+
+        /** Shard index holding the permit, or -1 when every shard is full. */
+        int tryAcquire() {
+            int start = (int) (Thread.currentThread().getId() % shards);
+            for (int i = 0; i < shards; i++) {
+                int s = (start + i) % shards;
+                int slot = s * PAD;
+                int n;
+                while ((n = used.get(slot)) < capacity[s]) {
+                    if (used.compareAndSet(slot, n, n + 1)) return s;
+                }
+            }
+            return -1;
+        }
+
+        void release(int shard) {
+            used.decrementAndGet(shard * PAD);
+        }
+
+        int inUse() {
+            int n = 0;
+            for (int s = 0; s < shards; s++) n += used.get(s * PAD);
+            return n;
+        }
+    }
+
+    // ----- Stats -----
+
+    public static List<AdmissionFilter> all() { return ALL; }
+
+    public String getName() { return name; }
+    public long getAdmitted() { return admitted.sum(); }
+    public long getRejectedRate() { return rejectedRate.sum(); }
+    public long getRejectedBusy() { return rejectedBusy.sum(); }
+    public long getOverflowed() { return overflowed.sum(); }
+    public int getBuckets() { return ipBuckets.size() + sessionBuckets.size(); }
+    public int getInUse() { return concurrency != null ? concurrency.inUse() : 0; }
+}
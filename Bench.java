@@ -0,0 +1,521 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Dependency-free benchmarks for the handler code paths.
+ *
+ *   javac -d out *.java
+ *   java -cp out Bench            (everything)
+ *   java -cp out Bench form json  (only benchmarks whose name contains "form" or "json")
+ *
+ * Micro benchmarks run an operation in timed batches after a warm-up and report
+ * throughput, p50/p99 time per operation and bytes allocated per operation (measured
+ * with the HotSpot per-thread allocation counter). The "http" benchmarks start a real
+ * HttpServer on a free port with the production handlers and drive it from several
+ * client threads; /events-data is served from a synthetic catalog so no MySQL is needed.
+ * The "sessions" benchmarks hammer one SessionStore from bench.clients threads with a
+ * create/find/markWrite mix while another thread keeps sweeping it.
+ *
+ * Cases that touch the database (http.login, http.signup, http.register,
+ * http.add-event, pool.borrow) run against {@link MemoryDatabase} unless db.driver or
+ * db.config is given, so they measure this code, not MySQL; the HTTP ones seed their
+ * rows into it and are skipped against a real database. Login and signup are
+ * dominated by password hashing; lower auth.pbkdf2.iterations to look past it.
+ *
+ * Numbers are only comparable between runs on the same machine; use them to compare
+ * before/after a change, not as absolute capacity figures.
+ */
+public class Bench {
+
+    private static final long WARMUP_MS = Long.getLong("bench.warmupMs", 2000);
+    private static final long MEASURE_MS = Long.getLong("bench.measureMs", 3000);
+    private static final int HTTP_CLIENTS = Integer.getInteger("bench.clients", 16);
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // keeps results alive so the JIT cannot drop the work
+    static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        List<String> filters = Arrays.asList(args);
+        // must be set before DBConnection is first touched
+        if (System.getProperty("db.driver") == null && System.getProperty("db.config") == null) {
+            System.setProperty("db.driver", "MemoryDatabase");
+            System.setProperty("db.url", "jdbc:memory:bench");
+        }
+
+        String form = "event_name=Coding+Hackathon&event_date=2025-12-12&venue=Lab%203&registration_fee=50"
+                + "&registration_closes_on=2025-12-10&max_participants=100";
+        List<EventCatalog.Event> events = syntheticEvents(500);
+        OutputStream devNull = OutputStream.nullOutputStream();
+
+        byte[] formBytes = form.getBytes(java.nio.charset.StandardCharsets.UTF_8);
+        if (selected(filters, "form.legacy")) micro("form.legacy", () -> legacyFormParse(form));
+        if (selected(filters, "form.parser")) micro("form.parser", () -> {
+            FormData f = FormData.read(new java.io.ByteArrayInputStream(formBytes));
+            return f.get("venue");
+        });
+        if (selected(filters, "json.catalog")) micro("json.catalog(500)", () -> EventCatalog.toJson(events));
+        if (selected(filters, "json.writer")) micro("json.writer(500)", () -> {
+            JsonWriter w = JsonWriter.forThread(devNull);
+            w.beginArray();
+            for (EventCatalog.Event e : events) EventCatalog.writeEvent(w, e);
+            w.endArray();
+            w.flush();
+            return w;
+        });
+
+        if (selected(filters, "pool.borrow")) {
+            MemoryDatabase driver = new MemoryDatabase();
+            ConnectionPool pool = new ConnectionPool(() -> driver.connect("jdbc:memory:bench", new Properties()),
+                    1, 4, 5000, 300_000, 2, 32);
+            Callable<Object> borrow = () -> {
+                try (Connection con = pool.borrow()) {
+                    return con.prepareStatement(RegistrationEngine.LOAD_SEATS); // from the statement cache
+                }
+            };
+            micro("pool.borrow", borrow);
+            concurrent("pool.borrow(" + HTTP_CLIENTS + " on 4)", borrow);
+            pool.close();
+        }
+        for (int sessions : new int[] { 10_000, 50_000 }) {
+            String name = "sessions(" + sessions + ")";
+            if (selected(filters, name)) sessions(name, sessions);
+        }
+        if (selected(filters, "http")) httpBenchmarks(filters, events);
+    }
+
+    private static boolean selected(List<String> filters, String name) {
+        if (filters.isEmpty()) return true;
+        for (String f : filters) {
+            if (name.contains(f) || f.contains(name)) return true;
+        }
+        return false;
+    }
+
+    // ----- Code under test that only exists inline in handlers -----
+
+    /** The split("&") / split("=") / URLDecoder loop the POST handlers used to carry. */
+    static String[] legacyFormParse(String body) throws IOException {
+        String[] out = new String[6];
+        for (String pair : body.split("&")) {
+            String[] kv = pair.split("=", 2);
+            String value = kv.length > 1 ? java.net.URLDecoder.decode(kv[1], "UTF-8") : "";
+            switch (kv[0]) {
+                case "event_name": out[0] = value; break;
+                case "event_date": out[1] = value; break;
+                case "venue": out[2] = value; break;
+                case "registration_fee": out[3] = value; break;
+                case "registration_closes_on": out[4] = value; break;
+                case "max_participants": out[5] = value; break;
+            }
+        }
+        return out;
+    }
+
+    static List<EventCatalog.Event> syntheticEvents(int n) {
+        List<EventCatalog.Event> events = new ArrayList<>(n);
+        for (int i = 1; i <= n; i++) {
+            String date = String.format("2025-%02d-%02d", 1 + i % 12, 1 + i % 28);
+            events.add(new EventCatalog.Event(i, "Event \"" + i + "\" \u2013 workshop", date, "Hall " + (i % 7),
+                    i % 3 == 0 ? 0 : 50.0 + i % 5, date, 100 + i));
+        }
+        return events;
+    }
+
+    // ----- Micro benchmark harness -----
+
+    static void micro(String name, Callable<Object> op) throws Exception {
+        // size batches so one batch takes roughly 1ms
+        int batch = 1;
+        while (true) {
+            long t = System.nanoTime();
+            for (int i = 0; i < batch; i++) sink = op.call();
+            if (System.nanoTime() - t > 1_000_000 || batch >= 1 << 20) break;
+            batch <<= 1;
+        }
+
+        long end = System.currentTimeMillis() + WARMUP_MS;
+        while (System.currentTimeMillis() < end) {
+            for (int i = 0; i < batch; i++) sink = op.call();
+        }
+
+        long tid = Thread.currentThread().getId();
+        List<Long> perOp = new ArrayList<>();
+        long ops = 0;
+        long allocStart = THREADS.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        end = System.currentTimeMillis() + MEASURE_MS;
+        while (System.currentTimeMillis() < end) {
+            long t = System.nanoTime();
+            for (int i = 0; i < batch; i++) sink = op.call();
+            perOp.add((System.nanoTime() - t) / batch);
+            ops += batch;
+        }
+        long elapsed = System.nanoTime() - start;
+        long alloc = THREADS.getThreadAllocatedBytes(tid) - allocStart;
+
+        long[] samples = perOp.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(samples);
+        System.out.printf("%-24s %12.0f ops/s   p50 %9d ns   p99 %9d ns   %8.1f B/op%n",
+                name, ops * 1e9 / elapsed, percentile(samples, 50), percentile(samples, 99), (double) alloc / ops);
+    }
+
+    static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, idx))];
+    }
+
+    // ----- Concurrent sessions -----
+
+    /**
+     * Keeps about {@code live} sessions in one store. Every client thread loops over 5%
+     * create (a new login in a random slot; 4 in 5 log the old session out, the rest
+     * abandon it), 90% find with sliding expiry and 5% find + markWrite; a find that misses
+     * logs in again. A sweeper thread runs sweep() back to back. The TTL is 250ms, so
+     * touches, expiries and sweeps that find work happen throughout the run.
+     */
+    static void sessions(String name, int live) throws Exception {
+        SessionStore store = new SessionStore(250, null);
+        AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(live);
+        for (int i = 0; i < live; i++) ids.set(i, store.create("Student " + i, i + "@example.com", "student").id);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong sweeps = new AtomicLong();
+        List<Long> sweepNanos = new ArrayList<>();
+        Thread sweeper = new Thread(() -> {
+            while (running.get()) {
+                long t0 = System.nanoTime();
+                store.sweep();
+                long dt = System.nanoTime() - t0;
+                synchronized (sweepNanos) { sweepNanos.add(dt); }
+                sweeps.incrementAndGet();
+            }
+        }, "bench-sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+
+        try {
+            Callable<Object> op = () -> sessionOp(store, ids);
+            runThreads(op, WARMUP_MS, null, new AtomicLong());
+            synchronized (sweepNanos) { sweepNanos.clear(); }
+
+            long[][] latencies = new long[HTTP_CLIENTS][];
+            AtomicLong alloc = new AtomicLong();
+            long start = System.nanoTime();
+            long ops = runThreads(op, MEASURE_MS, latencies, alloc);
+            long elapsed = System.nanoTime() - start;
+            int size = store.size(); // before the TTL runs out on the idle store
+
+            long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+            long[] sweepTimes;
+            synchronized (sweepNanos) { sweepTimes = sweepNanos.stream().mapToLong(Long::longValue).sorted().toArray(); }
+            System.out.printf("%-24s %12.0f ops/s   p50 %9d ns   p99 %9d ns   %8.1f B/op%n",
+                    name, ops * 1e9 / elapsed, percentile(all, 50), percentile(all, 99), (double) alloc.get() / Math.max(1, ops));
+            System.out.printf("%-24s %d sweeps, p50 %.2f ms   p99 %.2f ms, %d sessions live%n", "",
+                    sweepTimes.length, percentile(sweepTimes, 50) / 1e6, percentile(sweepTimes, 99) / 1e6, size);
+        } finally {
+            running.set(false);
+            sweeper.join();
+            store.close();
+        }
+    }
+
+    private static Object sessionOp(SessionStore store, AtomicReferenceArray<String> ids) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int slot = rnd.nextInt(ids.length());
+        int op = rnd.nextInt(100);
+        if (op < 5) {
+            String old = ids.getAndSet(slot, store.create("Student " + slot, slot + "@example.com", "student").id);
+            if (op < 4) store.remove(old);
+            return old;
+        }
+        SessionStore.Session s = store.find(ids.get(slot));
+        if (s == null) {
+            // expired: the student logs in again
+            s = store.create("Student " + slot, slot + "@example.com", "student");
+            ids.set(slot, s.id);
+        } else if (op >= 95) {
+            s.markWrite();
+        }
+        return s;
+    }
+
+    // ----- Multi-threaded harness -----
+
+    /** Runs op from bench.clients threads after a warm-up and reports like micro(). */
+    static void concurrent(String name, Callable<Object> op) throws Exception {
+        runThreads(op, WARMUP_MS, null, new AtomicLong());
+        long[][] latencies = new long[HTTP_CLIENTS][];
+        AtomicLong alloc = new AtomicLong();
+        long start = System.nanoTime();
+        long ops = runThreads(op, MEASURE_MS, latencies, alloc);
+        long elapsed = System.nanoTime() - start;
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-24s %12.0f ops/s   p50 %9d ns   p99 %9d ns   %8.1f B/op%n",
+                name, ops * 1e9 / elapsed, percentile(all, 50), percentile(all, 99), (double) alloc.get() / Math.max(1, ops));
+    }
+
+    /** Calls op in a loop on bench.clients threads; per-call nanos go to latencies, allocated bytes to alloc. */
+    private static long runThreads(Callable<Object> op, long durationMs, long[][] latencies, AtomicLong alloc)
+            throws InterruptedException {
+        AtomicLong ops = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(HTTP_CLIENTS);
+        long end = System.currentTimeMillis() + durationMs;
+        for (int c = 0; c < HTTP_CLIENTS; c++) {
+            int id = c;
+            Thread t = new Thread(() -> {
+                long tid = Thread.currentThread().getId();
+                long allocStart = THREADS.getThreadAllocatedBytes(tid);
+                long[] lat = new long[1 << 16];
+                int n = 0;
+                try {
+                    while (System.currentTimeMillis() < end) {
+                        long t0 = System.nanoTime();
+                        try {
+                            sink = op.call();
+                        } catch (Exception e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        long dt = System.nanoTime() - t0;
+                        if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = dt;
+                    }
+                } finally {
+                    alloc.addAndGet(THREADS.getThreadAllocatedBytes(tid) - allocStart);
+                    ops.addAndGet(n);
+                    if (latencies != null) latencies[id] = Arrays.copyOf(lat, n);
+                    done.countDown();
+                }
+            }, "bench-thread-" + c);
+            t.start();
+        }
+        done.await();
+        if (errors.get() > 0) System.out.println("  (" + errors.get() + " errors)");
+        return ops.get();
+    }
+
+    // ----- End-to-end HTTP -----
+
+    private static void httpBenchmarks(List<String> filters, List<EventCatalog.Event> events) throws Exception {
+        Path publicDir = Files.createTempDirectory("bench-public");
+        StringBuilder html = new StringBuilder("<!DOCTYPE html><html><body>");
+        for (int i = 0; i < 400; i++) html.append("<div class=\"card\">Event card ").append(i).append("</div>\n");
+        Files.writeString(publicDir.resolve("events.html"), html.append("</body></html>").toString());
+        StaticAssets assets = new StaticAssets(publicDir, 1 << 20);
+        assets.start();
+
+        Main.catalog.load(events);
+        ServerExecutor executor = ServerExecutor.fromSystemProperties();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/events-data", new Main.EventsDataHandler()).getFilters().add(executor.filter());
+        server.createContext("/login", new Main.LoginHandler()).getFilters().add(executor.filter());
+        server.createContext("/signup", new Main.SignupHandler()).getFilters().add(executor.filter());
+        server.createContext("/register", new Main.RegisterHandler()).getFilters().add(executor.filter());
+        server.createContext("/add-event", new Main.AddEventHandler()).getFilters().add(executor.filter());
+        server.createContext("/", exchange -> {
+            if (!assets.serve(exchange, exchange.getRequestURI().getPath())) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        }).getFilters().add(executor.filter());
+        server.setExecutor(executor);
+        server.start();
+
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+        try {
+            if (selected(filters, "http.events-data")) load("http.events-data", base + "/events-data", null);
+            if (selected(filters, "http.events-data.304")) {
+                String etag = HttpClient.newHttpClient().send(HttpRequest.newBuilder(URI.create(base + "/events-data")).build(),
+                        HttpResponse.BodyHandlers.discarding()).headers().firstValue("ETag").orElse("");
+                load("http.events-data.304", base + "/events-data", etag);
+            }
+            if (selected(filters, "http.static")) load("http.static", base + "/events.html", null);
+            databaseBenchmarks(filters, base);
+        } finally {
+            server.stop(0);
+            executor.shutdown(1000);
+            assets.close();
+        }
+    }
+
+    /**
+     * The form handlers against the database. Every request is a different student or
+     * event, so nothing is answered from a duplicate check: signups use fresh emails,
+     * each registration logs in a new student (a session created directly) on one of
+     * 20 events with room for all of them, and admins add events with new names.
+     */
+    private static void databaseBenchmarks(List<String> filters, String base) throws Exception {
+        if (!"MemoryDatabase".equals(System.getProperty("db.driver"))) {
+            // the cases seed users and events straight into the stand-in
+            System.out.println("http.login/signup/register/add-event skipped: they need -Ddb.driver=MemoryDatabase");
+            return;
+        }
+        AtomicLong seq = new AtomicLong();
+        if (selected(filters, "http.login")) {
+            MemoryDatabase.addUser("Bench Student", "bench@example.com", Main.passwords.hash("Bench-123"), "student");
+            HttpRequest login = form(base + "/login", null, "email=bench%40example.com&password=Bench-123");
+            load("http.login", () -> login);
+        }
+        if (selected(filters, "http.signup")) {
+            load("http.signup", () -> {
+                long n = seq.incrementAndGet();
+                return form(base + "/signup", null, "name=Student+" + n + "&roll_no=R" + n + "&email=s" + n
+                        + "%40example.com&phone_number=0000000000&department=CSE&year=2&password=Signup-123");
+            });
+        }
+        if (selected(filters, "http.register")) {
+            int[] events = new int[20];
+            for (int i = 0; i < events.length; i++) events[i] = MemoryDatabase.addEvent("Bench " + i, "2030-01-01", 1_000_000);
+            load("http.register", () -> {
+                long n = seq.incrementAndGet();
+                SessionStore.Session s = Main.sessions.create("student-" + n, n + "@example.com", "student");
+                return form(base + "/register", s, "event_id=" + events[(int) (n % events.length)]);
+            });
+        }
+        if (selected(filters, "http.add-event")) {
+            SessionStore.Session admin = Main.sessions.create("Bench Admin", "admin@example.com", "admin");
+            load("http.add-event", () -> form(base + "/add-event", admin, "event_name=Workshop+" + seq.incrementAndGet()
+                    + "&event_date=2030-02-01&venue=Lab+3&registration_fee=50&registration_closes_on=2030-01-25"
+                    + "&max_participants=100"));
+        }
+    }
+
+    private static HttpRequest form(String url, SessionStore.Session session, String body) {
+        HttpRequest.Builder rb = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(body));
+        if (session != null) rb.header("Cookie", SessionStore.COOKIE + "=" + session.id);
+        return rb.build();
+    }
+
+    /**
+     * Drives one URL from HTTP_CLIENTS threads and reports throughput, latency and allocation.
+     * Allocation is the client threads' own counters plus, for every other thread alive at
+     * the end, what it allocated since the start of the window (threads that exit mid-window,
+     * such as an idle pool worker timing out, drop out instead of subtracting their total).
+     */
+    static void load(String name, String url, String ifNoneMatch) throws Exception {
+        HttpRequest.Builder rb = HttpRequest.newBuilder(URI.create(url)).GET();
+        if (ifNoneMatch != null) rb.header("If-None-Match", ifNoneMatch);
+        HttpRequest request = rb.build();
+        load(name, () -> request);
+    }
+
+    /** Like load(name, url, ...), with the next request built per call. */
+    static void load(String name, Supplier<HttpRequest> requests) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        runClients(client, requests, WARMUP_MS, null, null);
+
+        long[][] latencies = new long[HTTP_CLIENTS][];
+        AtomicLong clientAlloc = new AtomicLong();
+        Map<Long, Long> allocStart = threadAllocatedBytes();
+        long start = System.nanoTime();
+        long ops = runClients(client, requests, MEASURE_MS, latencies, clientAlloc);
+        long elapsed = System.nanoTime() - start;
+        long alloc = clientAlloc.get() + allocatedSince(allocStart);
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-24s %12.0f req/s   p50 %9d us   p99 %9d us   %8.1f KB/req (clients+server)%n",
+                name, ops * 1e9 / elapsed, percentile(all, 50) / 1000, percentile(all, 99) / 1000,
+                alloc / 1024.0 / Math.max(1, ops));
+    }
+
+    private static long runClients(HttpClient client, Supplier<HttpRequest> requests, long durationMs,
+                                   long[][] latencies, AtomicLong alloc) throws InterruptedException {
+        AtomicLong ops = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        Map<Integer, Long> failed = new TreeMap<>(); // status -> count, guarded by itself
+        Thread[] clients = new Thread[HTTP_CLIENTS];
+        long end = System.currentTimeMillis() + durationMs;
+        for (int c = 0; c < HTTP_CLIENTS; c++) {
+            int id = c;
+            clients[c] = new Thread(() -> {
+                long tid = Thread.currentThread().getId();
+                long allocStart = THREADS.getThreadAllocatedBytes(tid);
+                long[] lat = new long[1 << 16];
+                int n = 0;
+                try {
+                    while (System.currentTimeMillis() < end) {
+                        long t0 = System.nanoTime();
+                        try {
+                            HttpResponse<Void> r = client.send(requests.get(), HttpResponse.BodyHandlers.discarding());
+                            if (r.statusCode() >= 400) {
+                                errors.incrementAndGet();
+                                synchronized (failed) { failed.merge(r.statusCode(), 1L, Long::sum); }
+                            }
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        long dt = System.nanoTime() - t0;
+                        if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = dt;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    ops.addAndGet(n);
+                    if (latencies != null) latencies[id] = Arrays.copyOf(lat, n);
+                    if (alloc != null) alloc.addAndGet(THREADS.getThreadAllocatedBytes(tid) - allocStart);
+                }
+            }, "bench-client-" + c);
+            clients[c].start();
+        }
+        // joined, so no client thread is still alive (and counted twice) in allocatedSince
+        for (Thread t : clients) t.join();
+        if (errors.get() > 0) {
+            System.out.println("  (" + errors.get() + " errors" + (failed.isEmpty() ? "" : ", by status " + failed) + ")");
+        }
+        return ops.get();
+    }
+
+    /** Allocated bytes per live thread id (-1 for a thread that died since the ids were read). */
+    private static Map<Long, Long> threadAllocatedBytes() {
+        long[] ids = THREADS.getAllThreadIds();
+        long[] bytes = THREADS.getThreadAllocatedBytes(ids);
+        Map<Long, Long> byId = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) byId.put(ids[i], bytes[i]);
+        return byId;
+    }
+
+    /** Bytes allocated since start by threads alive now; a thread started since counts from zero. */
+    private static long allocatedSince(Map<Long, Long> start) {
+        long total = 0;
+        for (Map.Entry<Long, Long> e : threadAllocatedBytes().entrySet()) {
+            if (e.getValue() < 0) continue;
+            total += Math.max(0, e.getValue() - Math.max(0, start.getOrDefault(e.getKey(), 0L)));
+        }
+        return total;
+    }
+}
@@ -0,0 +1,168 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.regex.Pattern;
+
+/**
+ * Streaming export for admins: GET /admin/export?table=events|registrations&format=csv|json
+ * (registrations can be narrowed with &event_id=N).
+ *
+ * Rows go from the ResultSet straight into a chunked response through a JsonWriter or
+ * a small CSV encoder over the same buffer, with a bounded fetch size (export.fetchSize),
+ * so memory use does not depend on the table size. The JDBC URL enables
+ * useCursorFetch so MySQL actually honours the fetch size instead of buffering the
+ * whole result in the driver.
+ *
+ * CSV cells that a spreadsheet would run as a formula (text starting with = + - @, tab
+ * or CR) are prefixed with ' so event and user names cannot inject one.
+ */
+public class BulkExport implements HttpHandler {
+
+    static final String EVENTS_SQL =
+            "SELECT id, event_name, event_date, venue, reg_fee, reg_close_date, max_participants FROM events ORDER BY event_date, id";
+    static final String REGISTRATIONS_SQL =
+            "SELECT event_id, event_name, event_date, user_name FROM registrations ORDER BY event_id, user_name";
+    static final String EVENT_REGISTRATIONS_SQL =
+            "SELECT event_id, event_name, event_date, user_name FROM registrations WHERE event_id = ? ORDER BY user_name";
+
+    private static final int FETCH_SIZE = Integer.getInteger("export.fetchSize", 500);
+    private static final Pattern NUMBER = Pattern.compile("[-+]?\\d+(\\.\\d+)?([eE][-+]?\\d+)?");
+
+    private final SessionStore sessions;
+
+    public BulkExport(SessionStore sessions) {
+        this.sessions = sessions;
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            Responses.methodNotAllowed(exchange, "GET");
+            return;
+        }
+        SessionStore.Session session = sessions.find(exchange);
+        if (session == null || !session.isAdmin()) {
+            Responses.text(exchange, session == null ? 401 : 403, session == null ? "Unauthorized" : "Forbidden");
+            return;
+        }
+
+        FormData query = FormData.parseQuery(exchange.getRequestURI().getRawQuery());
+        String table = query.get("table", "events");
+        boolean json = query.get("format", "csv").equalsIgnoreCase("json");
+        int eventId = 0;
+        try {
+            if (!table.equals("events") && !table.equals("registrations")) {
+                throw new IllegalArgumentException("table must be events or registrations");
+            }
+            if (query.has("event_id")) eventId = query.getInt("event_id");
+        } catch (IllegalArgumentException e) {
+            Responses.text(exchange, 400, "Bad request: " + e.getMessage());
+            return;
+        }
+
+        boolean oneEvent = table.equals("registrations") && eventId > 0;
+        String sql = table.equals("events") ? EVENTS_SQL : oneEvent ? EVENT_REGISTRATIONS_SQL : REGISTRATIONS_SQL;
+        // long scans are what replicas are for; right after an import this session reads the primary
+        try (Connection con = DBConnection.getReadConnection(session)) {
+            PreparedStatement ps = con.prepareStatement(sql);
+            if (oneEvent) ps.setInt(1, eventId);
+            ps.setFetchSize(FETCH_SIZE);
+            ResultSet rs = ps.executeQuery();
+
+            String file = table + (oneEvent ? "-" + eventId : "") + (json ? ".json" : ".csv");
+            exchange.getResponseHeaders().add("Content-Type", json ? "application/json" : "text/csv; charset=utf-8");
+            exchange.getResponseHeaders().add("Content-Disposition", "attachment; filename=\"" + file + "\"");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            JsonWriter w = JsonWriter.forThread(exchange.getResponseBody());
+            if (json) {
+                writeJson(rs, w);
+            } else {
+                writeCsv(rs, w);
+            }
+            w.flush();
+        } catch (SQLException e) {
+            Metrics.error("/admin/export", e);
+            // headers may already be out; dropping the connection is the only way to signal failure then
+            if (exchange.getResponseCode() == -1) {
+                Responses.text(exchange, 500, "Error: " + e.getMessage());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // ----- Encoders -----
+
+    static void writeJson(ResultSet rs, JsonWriter w) throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        w.beginArray();
+        while (rs.next()) {
+            w.beginObject();
+            for (int i = 1; i <= columns; i++) {
+                w.name(meta.getColumnLabel(i));
+                switch (meta.getColumnType(i)) {
+                    case Types.INTEGER: case Types.SMALLINT: case Types.TINYINT: case Types.BIGINT: {
+                        long v = rs.getLong(i);
+                        if (rs.wasNull()) w.nullValue(); else w.value(v);
+                        break;
+                    }
+                    case Types.DECIMAL: case Types.NUMERIC: case Types.DOUBLE: case Types.FLOAT: case Types.REAL: {
+                        double v = rs.getDouble(i);
+                        if (rs.wasNull()) w.nullValue(); else w.value(v);
+                        break;
+                    }
+                    default: {
+                        String v = rs.getString(i);
+                        if (v == null) w.nullValue(); else w.value(v);
+                    }
+                }
+            }
+            w.endObject();
+        }
+        w.endArray();
+    }
+
+    /** RFC 4180 CSV with a header row; the output reads back through BulkImport. */
+    static void writeCsv(ResultSet rs, JsonWriter w) throws SQLException, IOException {
+        ResultSetMetaData meta = rs.getMetaData();
+        int columns = meta.getColumnCount();
+        for (int i = 1; i <= columns; i++) {
+            if (i > 1) w.raw(',');
+            csvField(w, meta.getColumnLabel(i));
+        }
+        w.raw('\r').raw('\n');
+        while (rs.next()) {
+            for (int i = 1; i <= columns; i++) {
+                if (i > 1) w.raw(',');
+                String v = rs.getString(i);
+                if (v != null) csvField(w, v);
+            }
+            w.raw('\r').raw('\n');
+        }
+    }
+
+    static void csvField(JsonWriter w, String v) throws IOException {
+        if (!v.isEmpty() && "=+-@\t\r".indexOf(v.charAt(0)) >= 0 && !NUMBER.matcher(v).matches()) {
+            v = "'" + v; // shown as text instead of evaluated
+        }
+        boolean quote = false;
+        for (int i = 0; i < v.length() && !quote; i++) {
+            char c = v.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            w.rawText(v);
+            return;
+        }
+        w.raw('"');
+        w.rawText(v.replace("\"", "\"\""));
+        w.raw('"');
+    }
+}
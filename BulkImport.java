@@ -0,0 +1,479 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk event import for admins: POST /admin/import with a CSV or JSON body.
+ *
+ * CSV has a header row naming the columns (event_name, event_date, venue, reg_fee,
+ * reg_close_date, max_participants, in any order; the add-event form names
+ * registration_fee / registration_closes_on work too). JSON is an array of objects
+ * with the same keys. The format comes from ?format=csv|json or the Content-Type.
+ *
+ * The body is parsed row by row as it arrives, never buffered whole. Valid rows are
+ * inserted in batches of import.batchSize, one transaction per batch; if a batch
+ * fails it is rolled back and replayed row by row so only the bad rows are lost.
+ * The response is a JSON summary with the row number and reason of each rejected row
+ * (the first import.maxErrors of them). Rows already committed stay committed if the
+ * body turns out to be malformed half way, and the summary says how far it got.
+ */
+public class BulkImport implements HttpHandler {
+
+    static final String INSERT =
+            "INSERT INTO events (event_name, event_date, venue, reg_fee, reg_close_date, max_participants) VALUES (?,?,?,?,?,?)";
+
+    private static final int BATCH_SIZE = Integer.getInteger("import.batchSize", 500);
+    private static final int MAX_ROWS = Integer.getInteger("import.maxRows", 100_000);
+    private static final int MAX_ERRORS = Integer.getInteger("import.maxErrors", 100);
+    private static final int MAX_FIELD_CHARS = 4096;
+
+    private final SessionStore sessions;
+    private final EventCatalog catalog;
+
+    public BulkImport(SessionStore sessions, EventCatalog catalog) {
+        this.sessions = sessions;
+        this.catalog = catalog;
+    }
+
+    /** More rows than import.maxRows; answered with 413. */
+    static class TooManyRowsException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        TooManyRowsException() {
+            super("More than " + MAX_ROWS + " rows; split the file");
+        }
+    }
+
+    /** A source of rows keyed by column name; null at the end of the input. */
+    interface RowSource {
+        Map<String, String> next() throws IOException;
+    }
+
+    /** Outcome of one import, written back as the response body. */
+    static final class Report {
+        int rows;
+        int imported;
+        int failed;
+        String fatal;
+        final List<Integer> errorRows = new ArrayList<>();
+        final List<String> errorMessages = new ArrayList<>();
+
+        void reject(int row, String message) {
+            failed++;
+            if (errorRows.size() < MAX_ERRORS) {
+                errorRows.add(row);
+                errorMessages.add(message);
+            }
+        }
+    }
+
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
+            Responses.methodNotAllowed(exchange, "POST");
+            return;
+        }
+        SessionStore.Session session = sessions.find(exchange);
+        if (session == null || !session.isAdmin()) {
+            Responses.text(exchange, session == null ? 401 : 403, session == null ? "Unauthorized" : "Forbidden");
+            return;
+        }
+
+        FormData query = FormData.parseQuery(exchange.getRequestURI().getRawQuery());
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean json = query.has("format")
+                ? query.get("format").equalsIgnoreCase("json")
+                : contentType != null && contentType.toLowerCase().contains("json");
+        BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8), 16 * 1024);
+        RowSource source = json ? new JsonRows(in) : new CsvRows(in);
+
+        Report report = new Report();
+        int status = 200;
+        session.markWrite();
+        try {
+            run(source, report);
+        } catch (IllegalArgumentException | IOException e) {
+            // malformed body or too many rows; earlier batches are already committed
+            report.fatal = e.getMessage();
+            status = e instanceof TooManyRowsException ? 413 : 400;
+        } catch (SQLException e) {
+            Metrics.error("/admin/import", e);
+            report.fatal = "Database error: " + e.getMessage();
+            status = 500;
+        }
+        if (report.imported > 0) catalog.invalidate();
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(256 + report.errorRows.size() * 64);
+        JsonWriter w = JsonWriter.forThread(bos);
+        w.beginObject()
+         .name("rows").value(report.rows)
+         .name("imported").value(report.imported)
+         .name("failed").value(report.failed);
+        w.name("error");
+        if (report.fatal != null) w.value(report.fatal); else w.nullValue();
+        w.name("errors").beginArray();
+        for (int i = 0; i < report.errorRows.size(); i++) {
+            w.beginObject().name("row").value(report.errorRows.get(i)).name("error").value(report.errorMessages.get(i)).endObject();
+        }
+        w.endArray().endObject();
+        w.flush();
+        Responses.json(exchange, status, bos.toByteArray());
+    }
+
+    // ----- Import -----
+
+    void run(RowSource source, Report report) throws IOException, SQLException {
+        try (Connection con = DBConnection.getConnection()) {
+            con.setAutoCommit(false);
+            PreparedStatement ps = con.prepareStatement(INSERT);
+            List<EventCatalog.Event> batch = new ArrayList<>(BATCH_SIZE);
+            List<Integer> batchRows = new ArrayList<>(BATCH_SIZE);
+            Map<String, String> row;
+            try {
+                while ((row = source.next()) != null) {
+                    int rowNumber = ++report.rows;
+                    if (rowNumber > MAX_ROWS) {
+                        report.rows--;
+                        throw new TooManyRowsException();
+                    }
+                    EventCatalog.Event e;
+                    try {
+                        e = validate(row);
+                    } catch (IllegalArgumentException ex) {
+                        report.reject(rowNumber, ex.getMessage());
+                        continue;
+                    }
+                    batch.add(e);
+                    batchRows.add(rowNumber);
+                    if (batch.size() == BATCH_SIZE) {
+                        flush(con, ps, batch, batchRows, report);
+                    }
+                }
+            } finally {
+                // whatever was valid before a parse error still goes in
+                if (!batch.isEmpty()) flush(con, ps, batch, batchRows, report);
+            }
+        }
+    }
+
+    private void flush(Connection con, PreparedStatement ps, List<EventCatalog.Event> batch,
+                       List<Integer> batchRows, Report report) throws SQLException {
+        try {
+            for (EventCatalog.Event e : batch) {
+                bind(ps, e);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            con.commit();
+            report.imported += batch.size();
+        } catch (BatchUpdateException e) {
+            con.rollback();
+            ps.clearBatch();
+            // replay one by one to find the rows the database refuses
+            for (int i = 0; i < batch.size(); i++) {
+                try {
+                    bind(ps, batch.get(i));
+                    ps.executeUpdate();
+                    con.commit();
+                    report.imported++;
+                } catch (SQLException rowError) {
+                    con.rollback();
+                    report.reject(batchRows.get(i), rowError.getMessage());
+                }
+            }
+        } finally {
+            batch.clear();
+            batchRows.clear();
+        }
+    }
+
+    private static void bind(PreparedStatement ps, EventCatalog.Event e) throws SQLException {
+        ps.setString(1, e.eventName);
+        ps.setDate(2, java.sql.Date.valueOf(e.eventDate));
+        ps.setString(3, e.venue);
+        ps.setDouble(4, e.regFee);
+        ps.setDate(5, java.sql.Date.valueOf(e.regCloseDate));
+        ps.setInt(6, e.maxParticipants);
+    }
+
+    /** Checks one row the way the add-event form is checked; the message names the field. */
+    static EventCatalog.Event validate(Map<String, String> row) {
+        String name = required(row, "event_name", null);
+        java.sql.Date date = date(row, "event_date", null);
+        String venue = required(row, "venue", null);
+        double fee;
+        try {
+            fee = Double.parseDouble(required(row, "reg_fee", "registration_fee"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for reg_fee");
+        }
+        if (fee < 0 || Double.isNaN(fee) || Double.isInfinite(fee)) throw new IllegalArgumentException("reg_fee must not be negative");
+        java.sql.Date close = date(row, "reg_close_date", "registration_closes_on");
+        if (close.after(date)) throw new IllegalArgumentException("reg_close_date is after event_date");
+        int max;
+        try {
+            max = Integer.parseInt(required(row, "max_participants", null));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for max_participants");
+        }
+        if (max < 0) throw new IllegalArgumentException("max_participants must not be negative");
+        return new EventCatalog.Event(0, name, date.toString(), venue, fee, close.toString(), max);
+    }
+
+    private static String required(Map<String, String> row, String name, String alias) {
+        String v = row.get(name);
+        if ((v == null || v.isEmpty()) && alias != null) v = row.get(alias);
+        if (v == null || v.trim().isEmpty()) throw new IllegalArgumentException("Missing field: " + name);
+        return v.trim();
+    }
+
+    private static java.sql.Date date(Map<String, String> row, String name, String alias) {
+        String v = required(row, name, alias);
+        try {
+            return java.sql.Date.valueOf(v);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid date for " + name + " (expected yyyy-mm-dd)");
+        }
+    }
+
+    // ----- CSV (RFC 4180: quoted fields may hold commas, "" and line breaks) -----
+
+    static final class CsvRows implements RowSource {
+        private final BufferedReader in;
+        private String[] header;
+        private final List<String> fields = new ArrayList<>();
+        private final StringBuilder field = new StringBuilder();
+        private boolean eof;
+
+        CsvRows(BufferedReader in) {
+            this.in = in;
+        }
+
+        public Map<String, String> next() throws IOException {
+            if (header == null) {
+                if (!readRecord()) return null;
+                header = new String[fields.size()];
+                for (int i = 0; i < header.length; i++) {
+                    String h = fields.get(i).trim().toLowerCase();
+                    if (i == 0 && h.startsWith("\uFEFF")) h = h.substring(1); // BOM from spreadsheet exports
+                    header[i] = h;
+                }
+            }
+            while (readRecord()) {
+                if (fields.size() == 1 && fields.get(0).isEmpty()) continue; // blank line
+                Map<String, String> row = new HashMap<>();
+                for (int i = 0; i < header.length && i < fields.size(); i++) {
+                    row.put(header[i], fields.get(i));
+                }
+                return row;
+            }
+            return null;
+        }
+
+        // reads one record into fields; false at end of input
+        private boolean readRecord() throws IOException {
+            if (eof) return false;
+            fields.clear();
+            field.setLength(0);
+            boolean quoted = false;
+            boolean any = false;
+            while (true) {
+                int c = in.read();
+                if (c < 0) {
+                    eof = true;
+                    if (quoted) throw new IllegalArgumentException("Unterminated quoted field");
+                    if (!any) return false;
+                    fields.add(field.toString());
+                    return true;
+                }
+                any = true;
+                if (quoted) {
+                    if (c == '"') {
+                        in.mark(1);
+                        int d = in.read();
+                        if (d == '"') {
+                            append('"');
+                        } else {
+                            quoted = false;
+                            if (d >= 0) in.reset();
+                        }
+                    } else {
+                        append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    fields.add(field.toString());
+                    return true;
+                } else if (c != '\r') {
+                    append((char) c);
+                }
+            }
+        }
+
+        private void append(char c) {
+            if (field.length() >= MAX_FIELD_CHARS) throw new IllegalArgumentException("Field longer than " + MAX_FIELD_CHARS + " characters");
+            field.append(c);
+        }
+    }
+
+    // ----- JSON (an array of flat objects; values may be strings, numbers, booleans or null) -----
+
+    static final class JsonRows implements RowSource {
+        private final Reader in;
+        private int peeked = -2;
+        private boolean started;
+        private boolean done;
+
+        JsonRows(Reader in) {
+            this.in = in;
+        }
+
+        public Map<String, String> next() throws IOException {
+            if (done) return null;
+            if (!started) {
+                started = true;
+                expect('[');
+                if (peekToken() == ']') {
+                    read();
+                    return finish();
+                }
+            } else {
+                int c = readToken();
+                if (c == ']') return finish();
+                if (c != ',') throw syntax("',' or ']'", c);
+            }
+            return readObject();
+        }
+
+        private Map<String, String> finish() throws IOException {
+            done = true;
+            if (readToken() >= 0) throw new IllegalArgumentException("Unexpected content after the JSON array");
+            return null;
+        }
+
+        private Map<String, String> readObject() throws IOException {
+            expect('{');
+            Map<String, String> row = new HashMap<>();
+            if (peekToken() == '}') {
+                read();
+                return row;
+            }
+            while (true) {
+                expect('"');
+                String name = readString();
+                expect(':');
+                row.put(name.toLowerCase(), readScalar());
+                int c = readToken();
+                if (c == '}') return row;
+                if (c != ',') throw syntax("',' or '}'", c);
+            }
+        }
+
+        private String readScalar() throws IOException {
+            int c = peekToken();
+            if (c == '"') {
+                read();
+                return readString();
+            }
+            if (c == '{' || c == '[') throw new IllegalArgumentException("Nested values are not supported");
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                c = peek();
+                if (c < 0 || c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) break;
+                if (sb.length() >= MAX_FIELD_CHARS) throw new IllegalArgumentException("Value too long");
+                sb.append((char) read());
+            }
+            String v = sb.toString();
+            if (v.isEmpty()) throw syntax("a value", c);
+            return v.equals("null") ? null : v;
+        }
+
+        // after the opening quote
+        private String readString() throws IOException {
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                int c = read();
+                if (c < 0) throw new IllegalArgumentException("Unterminated string");
+                if (c == '"') return sb.toString();
+                if (sb.length() >= MAX_FIELD_CHARS) throw new IllegalArgumentException("Value too long");
+                if (c != '\\') {
+                    sb.append((char) c);
+                    continue;
+                }
+                c = read();
+                switch (c) {
+                    case '"': case '\\': case '/': sb.append((char) c); break;
+                    case 'b': sb.append('\b'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'r': sb.append('\r'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'u': {
+                        int v = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int d = Character.digit(read(), 16);
+                            if (d < 0) throw new IllegalArgumentException("Invalid \\u escape");
+                            v = v * 16 + d;
+                        }
+                        sb.append((char) v);
+                        break;
+                    }
+                    default: throw new IllegalArgumentException("Invalid escape in string");
+                }
+            }
+        }
+
+        private void expect(char want) throws IOException {
+            int c = readToken();
+            if (c != want) throw syntax("'" + want + "'", c);
+        }
+
+        private static IllegalArgumentException syntax(String expected, int got) {
+            return new IllegalArgumentException("Malformed JSON: expected " + expected
+                    + (got < 0 ? " but the body ended" : " but found '" + (char) got + "'"));
+        }
+
+        private int readToken() throws IOException {
+            int c;
+            do { c = read(); } while (c >= 0 && Character.isWhitespace(c));
+            return c;
+        }
+
+        private int peekToken() throws IOException {
+            int c;
+            while ((c = peek()) >= 0 && Character.isWhitespace(c)) read();
+            return c;
+        }
+
+        private int peek() throws IOException {
+            if (peeked == -2) peeked = in.read();
+            return peeked;
+        }
+
+        private int read() throws IOException {
+            if (peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            return in.read();
+        }
+    }
+}
@@ -0,0 +1,420 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small bounded JDBC connection pool.
+ *
+ * Connections handed out by {@link #borrow()} are proxies: calling close() gives the
+ * physical connection back to the pool instead of closing it, so handlers can keep
+ * using try-with-resources exactly as before. Each physical connection also keeps a
+ * small LRU cache of prepared statements keyed by SQL text. Statements and result sets
+ * a borrower leaves open are closed when the connection comes back, as they were when
+ * close() closed the physical connection.
+ *
+ * The pool only needs a {@link ConnectionFactory}, so it can be pointed at any JDBC
+ * driver (or a hand-written stand-in) without touching the MySQL settings.
+ */
+public class ConnectionPool {
+
+    /** Opens one new physical connection. */
+    public interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    /** Told how long every statement execute took (operation = executeQuery, executeUpdate, ...). */
+    public interface QueryTimer {
+        void record(String operation, long nanos);
+    }
+
+    // borrowed connections idle for less than this are handed out without isValid()
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final ConnectionFactory factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMs;
+    private final long idleTimeoutMs;
+    private final int validationTimeoutSec;
+    private final int statementCacheSize;
+
+    // newest first, so the warmest connection is reused and old ones age out at the tail
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    // one permit per connection that may be borrowed at the same time
+    private final Semaphore permits;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger total = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong borrowNanosTotal = new AtomicLong();
+    private final AtomicLong borrowNanosMax = new AtomicLong();
+
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+    private volatile QueryTimer queryTimer;
+
+    public ConnectionPool(ConnectionFactory factory, int minSize, int maxSize,
+                          long acquireTimeoutMs, long idleTimeoutMs,
+                          int validationTimeoutSec, int statementCacheSize) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size min=" + minSize + " max=" + maxSize);
+        }
+        this.factory = factory;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "db-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // ----- Borrow / return -----
+
+    /** Borrows a connection, waiting up to the acquire timeout for one to become free. */
+    public Connection borrow() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+
+        long start = System.nanoTime();
+        waiters.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiters.decrementAndGet();
+        }
+        if (!acquired) {
+            borrowTimeouts.incrementAndGet();
+            throw new SQLException("Timed out after " + acquireTimeoutMs + "ms waiting for a connection "
+                    + "(active=" + active.get() + ", max=" + maxSize + ")", "08001");
+        }
+
+        PooledConnection pc;
+        try {
+            pc = takeIdleOrCreate();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        active.incrementAndGet();
+        recordBorrow(System.nanoTime() - start);
+        return pc.lease();
+    }
+
+    private PooledConnection takeIdleOrCreate() throws SQLException {
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            if (System.nanoTime() - pc.lastReturnedNanos < VALIDATION_BYPASS_NANOS || isValid(pc)) {
+                return pc;
+            }
+            discard(pc);
+        }
+        return open();
+    }
+
+    private boolean isValid(PooledConnection pc) {
+        try {
+            return pc.physical.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection physical = factory.create();
+        total.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void giveBack(PooledConnection pc) {
+        active.decrementAndGet();
+        try {
+            pc.closeLeased();
+            if (!pc.broken && !closed) {
+                try {
+                    if (!pc.physical.getAutoCommit()) {
+                        pc.physical.rollback();
+                        pc.physical.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    pc.broken = true;
+                }
+            }
+            if (pc.broken || closed) {
+                discard(pc);
+            } else {
+                pc.lastReturnedNanos = System.nanoTime();
+                idle.offerFirst(pc);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        total.decrementAndGet();
+        pc.closeStatements();
+        try {
+            pc.physical.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private void recordBorrow(long nanos) {
+        borrowCount.incrementAndGet();
+        borrowNanosTotal.addAndGet(nanos);
+        long max;
+        while (nanos > (max = borrowNanosMax.get())) {
+            if (borrowNanosMax.compareAndSet(max, nanos)) break;
+        }
+    }
+
+    // ----- Maintenance -----
+
+    /** Opens connections until the pool holds at least min idle+active connections. */
+    public void fill() {
+        while (!closed && total.get() < minSize) {
+            try {
+                PooledConnection pc = open();
+                pc.lastReturnedNanos = System.nanoTime();
+                idle.offerLast(pc);
+            } catch (SQLException e) {
+                System.err.println("db-pool: could not open connection: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    private void evictIdle() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && total.get() > minSize) {
+            PooledConnection pc = it.next();
+            if (pc.lastReturnedNanos < cutoff && idle.remove(pc)) {
+                discard(pc);
+            }
+        }
+        fill();
+    }
+
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pc;
+        while ((pc = idle.pollFirst()) != null) {
+            discard(pc);
+        }
+    }
+
+    // ----- Metrics -----
+
+    public void setQueryTimer(QueryTimer timer) {
+        this.queryTimer = timer;
+    }
+
+    public int getActive() { return active.get(); }
+    public int getIdle() { return idle.size(); }
+    public int getTotal() { return total.get(); }
+    public int getWaiters() { return waiters.get(); }
+    public int getMaxSize() { return maxSize; }
+    public long getBorrowCount() { return borrowCount.get(); }
+    public long getBorrowTimeouts() { return borrowTimeouts.get(); }
+    public long getBorrowNanosMax() { return borrowNanosMax.get(); }
+
+    public long getBorrowNanosAvg() {
+        long n = borrowCount.get();
+        return n == 0 ? 0 : borrowNanosTotal.get() / n;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[active=" + getActive() + ", idle=" + getIdle() + ", total=" + getTotal()
+                + ", waiters=" + getWaiters() + ", borrows=" + getBorrowCount()
+                + ", avgBorrowUs=" + getBorrowNanosAvg() / 1000 + ", maxBorrowUs=" + getBorrowNanosMax() / 1000 + "]";
+    }
+
+    // ----- Physical connection + proxies -----
+
+    private final class PooledConnection {
+        final Connection physical;
+        volatile long lastReturnedNanos;
+        boolean broken = false;
+
+        // opened during the current lease and closed when it ends, as closing a physical
+        // connection would: uncached statements, and result sets of all statements
+        final List<Statement> leasedStatements = new ArrayList<>();
+        final List<ResultSet> leasedResults = new ArrayList<>();
+
+        // access-ordered, evicts (and closes) the least recently used statement
+        final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= statementCacheSize) return false;
+                try { eldest.getValue().close(); } catch (SQLException ignored) {}
+                return true;
+            }
+        };
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new LeaseHandler(this));
+        }
+
+        PreparedStatement cachedStatement(String sql, Connection lease) throws SQLException {
+            if (statementCacheSize <= 0) {
+                return (PreparedStatement) wrapStatement(physical.prepareStatement(sql), PreparedStatement.class, false, lease);
+            }
+            PreparedStatement ps = statements.get(sql);
+            if (ps == null || ps.isClosed()) {
+                ps = physical.prepareStatement(sql);
+                statements.put(sql, ps);
+            }
+            return (PreparedStatement) wrapStatement(ps, PreparedStatement.class, true, lease);
+        }
+
+        /**
+         * Proxy that times execute* calls and answers getConnection() with the lease.
+         * Cached statements ignore close(); uncached ones are closed when the lease ends.
+         */
+        Statement wrapStatement(Statement target, Class<?> type, boolean cached, Connection lease) {
+            if (!cached) leasedStatements.add(target);
+            return (Statement) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { type }, (proxy, method, args) -> {
+                        String name = method.getName();
+                        if (name.equals("getConnection")) return lease;
+                        if (name.equals("close")) {
+                            if (cached) {
+                                // cached statements stay open; close() just resets them for the next caller
+                                ((PreparedStatement) target).clearParameters();
+                                return null;
+                            }
+                            leasedStatements.remove(target);
+                        }
+                        Object result;
+                        QueryTimer timer = queryTimer;
+                        if (timer == null || !name.startsWith("execute")) {
+                            result = invoke(target, method, args);
+                        } else {
+                            long start = System.nanoTime();
+                            try {
+                                result = invoke(target, method, args);
+                            } finally {
+                                timer.record(name, System.nanoTime() - start);
+                            }
+                        }
+                        if (result instanceof ResultSet) leasedResults.add((ResultSet) result);
+                        return result;
+                    });
+        }
+
+        /** Closes what the lease left open, so nothing outlives it on the pooled connection. */
+        void closeLeased() {
+            for (ResultSet rs : leasedResults) {
+                try { rs.close(); } catch (SQLException ignored) {}
+            }
+            leasedResults.clear();
+            for (Statement st : leasedStatements) {
+                try { st.close(); } catch (SQLException ignored) {}
+            }
+            leasedStatements.clear();
+        }
+
+        void closeStatements() {
+            for (PreparedStatement ps : statements.values()) {
+                try { ps.close(); } catch (SQLException ignored) {}
+            }
+            statements.clear();
+        }
+
+        Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    // class 08 = connection exception; don't give this connection to anyone else
+                    if (state != null && state.startsWith("08")) broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+
+    /** One borrow of a pooled connection; becomes unusable once closed. */
+    private final class LeaseHandler implements InvocationHandler {
+        private final PooledConnection pc;
+        private boolean returned = false;
+
+        LeaseHandler(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        giveBack(pc);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || pc.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pc.physical + "]";
+            }
+            if (returned) throw new SQLException("Connection has been returned to the pool");
+            if (name.equals("prepareStatement") && args != null && args.length == 1) {
+                return pc.cachedStatement((String) args[0], (Connection) proxy);
+            }
+            Object result = pc.invoke(pc.physical, method, args);
+            if (result instanceof Statement && method.getReturnType().isInterface()) {
+                // createStatement, prepareCall and the other prepareStatement overloads
+                return pc.wrapStatement((Statement) result, method.getReturnType(), false, (Connection) proxy);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of email -&gt; stored credentials for LoginHandler.
+ *
+ * Entries expire after auth.cacheTtlSeconds so role or password changes made directly
+ * in the database are picked up eventually; SignupHandler and password upgrades call
+ * {@link #invalidate} / {@link #put} so the app's own writes are visible at once.
+ * With a warm cache a login is one in-memory lookup plus the hash check.
+ */
+public class CredentialCache {
+
+    public static final class Credentials {
+        final String name;
+        final String role;
+        final String password;   // PasswordHasher format, or legacy plaintext
+        final long loadedAt;
+
+        public Credentials(String name, String role, String password) {
+            this.name = name;
+            this.role = role;
+            this.password = password;
+            this.loadedAt = System.nanoTime();
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private final LinkedHashMap<String, Credentials> map;
+
+    public static CredentialCache fromSystemProperties() {
+        return new CredentialCache(Integer.getInteger("auth.cacheSize", 50_000),
+                TimeUnit.SECONDS.toNanos(Long.getLong("auth.cacheTtlSeconds", 600)));
+    }
+
+    public CredentialCache(int maxEntries, long ttlNanos) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlNanos;
+        this.map = new LinkedHashMap<String, Credentials>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Credentials> eldest) {
+                return size() > CredentialCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** Cached credentials, or null on a miss or an expired entry. */
+    public Credentials get(String email) {
+        Credentials c;
+        synchronized (map) {
+            c = map.get(key(email));
+            if (c != null && System.nanoTime() - c.loadedAt > ttlNanos) {
+                map.remove(key(email));
+                c = null;
+            }
+        }
+        (c != null ? hits : misses).incrementAndGet();
+        return c;
+    }
+
+    public void put(String email, Credentials credentials) {
+        synchronized (map) {
+            map.put(key(email), credentials);
+        }
+    }
+
+    public void invalidate(String email) {
+        synchronized (map) {
+            map.remove(key(email));
+        }
+    }
+
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    // MySQL's default collation compares emails case-insensitively, so the cache does too
+    private static String key(String email) {
+        return email.toLowerCase(java.util.Locale.ROOT);
+    }
+}
@@ -1,19 +1,231 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Connection pools for the primary database and optional read replicas.
+ *
+ * Settings come from -D system properties, then the properties file named by
+ * -Ddb.config, then the old built-in defaults, so a plain `java Main` still talks to
+ * localhost:
+ *
+ *   db.url, db.user, db.password (or env DB_PASSWORD), db.driver
+ *   db.replicas           comma separated replica JDBC URLs (none by default)
+ *   db.replica.user / db.replica.password   default to the primary's
+ *   db.pool.*             pool sizing, shared by every pool
+ *
+ * {@link #getConnection()} is always the primary and is what writes use.
+ * {@link #getReadConnection} picks the least busy healthy replica (round-robin between
+ * equally busy ones) and falls back to the primary when there is none. A session that
+ * wrote within db.readYourWritesMs reads from the primary, so users see their own
+ * changes despite replication lag. A background check takes replicas out of and back
+ * into rotation. db.driver accepts any JDBC driver, so local stand-in databases work
+ * for testing.
+ */
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/eventdb?useSSL=false&serverTimezone=UTC";
-    private static final String USER = "root";
-    private static final String PASS = "devyesh1234";
 
+    private static final Properties FILE = loadConfigFile();
+
+    // useCursorFetch: honour setFetchSize for streamed reads; rewriteBatchedStatements: one multi-row INSERT per batch
+    private static final String URL = setting("db.url", "jdbc:mysql://localhost:3306/eventdb?useSSL=false&serverTimezone=UTC"
+            + "&useCursorFetch=true&rewriteBatchedStatements=true");
+    private static final String USER = setting("db.user", "root");
+    private static final String PASS = setting("db.password", System.getenv().getOrDefault("DB_PASSWORD", "devyesh1234"));
+    private static final String DRIVER = setting("db.driver", "com.mysql.cj.jdbc.Driver");
+
+    // Pool settings, override with -Ddb.pool.min=... etc.
+    private static final int POOL_MIN = Integer.parseInt(setting("db.pool.min", "2"));
+    private static final int POOL_MAX = Integer.parseInt(setting("db.pool.max", "20"));
+    private static final long ACQUIRE_TIMEOUT_MS = Long.parseLong(setting("db.pool.acquireTimeoutMs", "5000"));
+    private static final long IDLE_TIMEOUT_MS = Long.parseLong(setting("db.pool.idleTimeoutMs", "300000"));
+    private static final int VALIDATION_TIMEOUT_SEC = Integer.parseInt(setting("db.pool.validationTimeoutSec", "2"));
+    private static final int STATEMENT_CACHE_SIZE = Integer.parseInt(setting("db.pool.statementCache", "32"));
+
+    private static final long READ_YOUR_WRITES_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Long.parseLong(setting("db.readYourWritesMs", "2000")));
+    private static final long HEALTH_INTERVAL_MS = Long.parseLong(setting("db.replica.healthIntervalMs", "5000"));
+
+    /** One read replica with its own pool and health state. */
+    public static final class Replica {
+        final String url;
+        final ConnectionPool pool;
+        final AtomicLong reads = new AtomicLong();
+        volatile boolean healthy = true;
+
+        Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+
+        // busy connections plus callers waiting for one
+        int load() {
+            return pool.getActive() + pool.getWaiters();
+        }
+
+        public ConnectionPool getPool() { return pool; }
+        public boolean isHealthy() { return healthy; }
+        public long getReads() { return reads.get(); }
+    }
+
+    private static final ConnectionPool POOL;
+    private static final List<Replica> REPLICAS;
+    private static final AtomicInteger NEXT = new AtomicInteger();
+    private static final AtomicLong PRIMARY_READS = new AtomicLong();
+    private static final AtomicLong READ_FALLBACKS = new AtomicLong();
+
+    static {
+        // load the driver once instead of on every request
+        try {
+            Class.forName(DRIVER);
+        } catch (ClassNotFoundException e) {
+            System.err.println("JDBC driver not found: " + DRIVER);
+        }
+        POOL = newPool(URL, USER, PASS);
+
+        List<Replica> replicas = new ArrayList<>();
+        String user = setting("db.replica.user", USER);
+        String pass = setting("db.replica.password", PASS);
+        for (String url : setting("db.replicas", "").split(",")) {
+            if (!url.trim().isEmpty()) replicas.add(new Replica(url.trim(), newPool(url.trim(), user, pass)));
+        }
+        REPLICAS = Collections.unmodifiableList(replicas);
+        if (!REPLICAS.isEmpty()) {
+            ScheduledExecutorService health = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "db-replica-health");
+                t.setDaemon(true);
+                return t;
+            });
+            health.scheduleWithFixedDelay(DBConnection::checkReplicas, HEALTH_INTERVAL_MS, HEALTH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ConnectionPool newPool(String url, String user, String pass) {
+        ConnectionPool pool = new ConnectionPool(() -> DriverManager.getConnection(url, user, pass),
+                POOL_MIN, POOL_MAX, ACQUIRE_TIMEOUT_MS, IDLE_TIMEOUT_MS,
+                VALIDATION_TIMEOUT_SEC, STATEMENT_CACHE_SIZE);
+        pool.setQueryTimer(Metrics::recordJdbc);
+        return pool;
+    }
+
+    /** Borrows a pooled connection to the primary; close() returns it to the pool. */
     public static Connection getConnection() throws SQLException {
-    try {
-        Class.forName("com.mysql.cj.jdbc.Driver"); // <-- ADD THIS
-    } catch (ClassNotFoundException e) {
-        throw new SQLException("MySQL Driver not found!", e);
+        return POOL.borrow();
+    }
+
+    // ----- Read routing -----
+
+    /** A connection for a read that may see slightly stale data. */
+    public static Connection getReadConnection() throws SQLException {
+        return getReadConnection(false);
     }
-    return DriverManager.getConnection(URL, USER, PASS);
-}
 
+    /** A read connection for this session: the primary if it wrote within db.readYourWritesMs. */
+    public static Connection getReadConnection(SessionStore.Session session) throws SQLException {
+        return getReadConnection(session != null && session.wroteWithin(READ_YOUR_WRITES_NANOS));
+    }
+
+    public static Connection getReadConnection(boolean primary) throws SQLException {
+        Replica r = primary ? null : pickReplica();
+        if (r != null) {
+            try {
+                Connection con = r.pool.borrow();
+                r.reads.incrementAndGet();
+                return con;
+            } catch (SQLException e) {
+                // down or saturated; the health check puts it back into rotation
+                r.healthy = false;
+                READ_FALLBACKS.incrementAndGet();
+                System.err.println("Replica " + r.url + " unavailable, reading from primary: " + e.getMessage());
+            }
+        }
+        PRIMARY_READS.incrementAndGet();
+        return POOL.borrow();
+    }
+
+    // least loaded healthy replica, scanning from a rotating start so ties go round-robin
+    private static Replica pickReplica() {
+        int n = REPLICAS.size();
+        if (n == 0) return null;
+        int start = Math.floorMod(NEXT.getAndIncrement(), n);
+        Replica best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < n; i++) {
+            Replica r = REPLICAS.get((start + i) % n);
+            if (!r.healthy) continue;
+            int load = r.load();
+            if (load < bestLoad) {
+                best = r;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    private static void checkReplicas() {
+        for (Replica r : REPLICAS) {
+            boolean ok;
+            try (Connection con = r.pool.borrow()) {
+                ok = con.isValid(VALIDATION_TIMEOUT_SEC);
+            } catch (SQLException e) {
+                ok = false;
+            }
+            if (ok != r.healthy) {
+                System.err.println("Replica " + r.url + (ok ? " is back" : " is down"));
+                r.healthy = ok;
+            }
+        }
+    }
+
+    /** Closes the primary and replica pools (shutdown). */
+    public static void close() {
+        POOL.close();
+        for (Replica r : REPLICAS) {
+            r.pool.close();
+        }
+    }
+
+    public static ConnectionPool pool() {
+        return POOL;
+    }
+
+    public static List<Replica> replicas() {
+        return REPLICAS;
+    }
+
+    public static long getPrimaryReads() { return PRIMARY_READS.get(); }
+    public static long getReadFallbacks() { return READ_FALLBACKS.get(); }
+
+    // ----- Configuration -----
+
+    private static Properties loadConfigFile() {
+        Properties p = new Properties();
+        String path = System.getProperty("db.config");
+        if (path != null) {
+            try (InputStream in = Files.newInputStream(Paths.get(path))) {
+                p.load(in);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot read db.config " + path, e);
+            }
+        }
+        return p;
+    }
+
+    private static String setting(String key, String def) {
+        String v = System.getProperty(key);
+        if (v == null) v = FILE.getProperty(key);
+        return v != null ? v.trim() : def;
+    }
 }
@@ -0,0 +1,264 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * In-memory copy of the events table for /events-data.
+ *
+ * The catalog is loaded once, kept sorted by event date and stored together with its
+ * serialized JSON and an ETag, so a read never touches MySQL. The events table only
+ * changes through AddEventHandler, which calls {@link #added(Event)} after its insert
+ * (write-through); {@link #invalidate()} forces a reload from the database instead.
+ *
+ * Each event also carries seats_remaining, read from a {@link SeatCounts} view. Seat
+ * changes only mark the JSON dirty; it is rebuilt from memory at most every
+ * catalog.seatRefreshMs, so a registration burst does not rebuild it per request.
+ */
+public class EventCatalog {
+
+    /** Live registration counts per event (implemented by RegistrationEngine). */
+    public interface SeatCounts {
+        /** Prepares counts for all events, called after every load from the database. */
+        void seed(List<Event> events) throws SQLException;
+
+        /** Free seats, or -1 when unknown or unlimited. */
+        int remaining(int eventId);
+    }
+
+    private static final long SEAT_REFRESH_NANOS =
+            java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(Long.getLong("catalog.seatRefreshMs", 500));
+
+    static final String SELECT_ALL =
+            "SELECT id, event_name, event_date, venue, reg_fee, reg_close_date, max_participants FROM events ORDER BY event_date ASC";
+
+    private static final Comparator<Event> BY_DATE =
+            Comparator.comparing((Event e) -> e.eventDate).thenComparingInt(e -> e.id);
+
+    /** One row of the events table. Dates are kept as yyyy-MM-dd strings, which sort correctly. */
+    public static final class Event {
+        final int id;
+        final String eventName;
+        final String eventDate;
+        final String venue;
+        final double regFee;
+        final String regCloseDate;
+        final int maxParticipants;
+
+        public Event(int id, String eventName, String eventDate, String venue,
+                     double regFee, String regCloseDate, int maxParticipants) {
+            this.id = id;
+            this.eventName = eventName;
+            this.eventDate = eventDate != null ? eventDate : "";
+            this.venue = venue;
+            this.regFee = regFee;
+            this.regCloseDate = regCloseDate != null ? regCloseDate : "";
+            this.maxParticipants = maxParticipants;
+        }
+
+        static Event fromRow(ResultSet rs) throws SQLException {
+            java.sql.Date date = rs.getDate("event_date");
+            java.sql.Date closes = rs.getDate("reg_close_date");
+            return new Event(rs.getInt("id"), rs.getString("event_name"),
+                    date != null ? date.toString() : "", rs.getString("venue"), rs.getDouble("reg_fee"),
+                    closes != null ? closes.toString() : "", rs.getInt("max_participants"));
+        }
+    }
+
+    /** Immutable view handed to readers: sorted events plus the JSON body and its ETag. */
+    public static final class Snapshot {
+        final List<Event> events;
+        final byte[] json;
+        final String etag;
+        final long builtAt = System.nanoTime();
+        private volatile byte[] gzipped;
+
+        Snapshot(List<Event> events, byte[] json, String etag) {
+            this.events = events;
+            this.json = json;
+            this.etag = etag;
+        }
+
+        /** The JSON body gzipped, compressed once on first use. */
+        byte[] gzipped() {
+            byte[] g = gzipped;
+            if (g == null) {
+                g = Responses.gzip(json); // a racing thread may compress it twice; harmless
+                gzipped = g;
+            }
+            return g;
+        }
+    }
+
+    private volatile Snapshot snapshot;
+    private volatile EventIndex index;
+    private volatile boolean seatsDirty = false;
+    private volatile SeatCounts seats;
+    private long version = 0;
+    private boolean reloadFromPrimary = false;   // guarded by this
+
+    public void setSeatCounts(SeatCounts seats) {
+        this.seats = seats;
+    }
+
+    /** Current snapshot, loading it from the database on first use or after invalidate(). */
+    public Snapshot get() throws SQLException {
+        Snapshot s = snapshot;
+        if (s != null && (!seatsDirty || System.nanoTime() - s.builtAt < SEAT_REFRESH_NANOS)) return s;
+        synchronized (this) {
+            if (snapshot == null) {
+                List<Event> events = loadFromDb(reloadFromPrimary);
+                reloadFromPrimary = false;
+                if (seats != null) seats.seed(events);
+                index = EventIndex.of(events);
+                seatsDirty = false;
+                snapshot = build(events);
+            } else if (seatsDirty) {
+                seatsDirty = false;
+                snapshot = build(snapshot.events);
+            }
+            return snapshot;
+        }
+    }
+
+    /** Search index over the current catalog, loading the catalog first if needed. */
+    public EventIndex index() throws SQLException {
+        EventIndex i = index;
+        // after invalidate() the old index is still set but stale; get() replaces it
+        if (i == null || snapshot == null) {
+            get();
+            i = index;
+        }
+        return i;
+    }
+
+    /** Seat counts changed; the JSON is rebuilt lazily by the next get(). */
+    public void seatsChanged() {
+        seatsDirty = true;
+    }
+
+    /** Write-through after an insert: puts the new event in date order without a reload. */
+    public synchronized void added(Event event) {
+        Snapshot s = snapshot;
+        if (s == null) return; // nothing cached yet, the next get() reads it from the DB
+        List<Event> events = new ArrayList<>(s.events.size() + 1);
+        events.addAll(s.events);
+        int pos = Collections.binarySearch(events, event, BY_DATE);
+        if (pos >= 0) {
+            // a concurrent reload already picked up the committed row
+            events.set(pos, event);
+        } else {
+            events.add(-pos - 1, event);
+        }
+        snapshot = build(events);
+        index.add(event);
+    }
+
+    /** Replaces the whole catalog, e.g. with rows that did not come from MySQL. */
+    public synchronized void load(List<Event> events) {
+        List<Event> sorted = new ArrayList<>(events);
+        sorted.sort(BY_DATE);
+        snapshot = build(sorted);
+        index = EventIndex.of(sorted);
+    }
+
+    public synchronized void invalidate() {
+        snapshot = null;
+        // invalidate() follows a write; a replica may not have it yet
+        reloadFromPrimary = true;
+    }
+
+    private List<Event> loadFromDb(boolean primary) throws SQLException {
+        List<Event> events = new ArrayList<>();
+        try (Connection con = DBConnection.getReadConnection(primary)) {
+            PreparedStatement ps = con.prepareStatement(SELECT_ALL);
+            ResultSet rs = ps.executeQuery();
+            while (rs.next()) {
+                events.add(Event.fromRow(rs));
+            }
+        }
+        events.sort(BY_DATE);
+        return events;
+    }
+
+    private Snapshot build(List<Event> events) {
+        byte[] json = toJson(events, seats);
+        CRC32 crc = new CRC32();
+        crc.update(json);
+        version++;
+        // weak: the same snapshot is served plain or gzipped
+        String etag = "W/\"" + version + "-" + Long.toHexString(crc.getValue()) + "\"";
+        return new Snapshot(Collections.unmodifiableList(events), json, etag);
+    }
+
+    // ----- JSON (no external library) -----
+
+    static byte[] toJson(List<Event> events) {
+        return toJson(events, null);
+    }
+
+    static byte[] toJson(List<Event> events, SeatCounts seats) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(events.size() * 180 + 2);
+        try {
+            JsonWriter w = new JsonWriter(8192).reset(bos);
+            w.beginArray();
+            for (Event e : events) {
+                writeEvent(w, e, seats != null ? seats.remaining(e.id) : -1);
+            }
+            w.endArray();
+            w.flush();
+        } catch (IOException impossible) {
+            throw new UncheckedIOException(impossible);
+        }
+        return bos.toByteArray();
+    }
+
+    static void writeEvent(JsonWriter w, Event e) throws IOException {
+        writeEvent(w, e, -1);
+    }
+
+    /** @param remaining free seats, or -1 to derive it from max_participants (no registrations known) */
+    static void writeEvent(JsonWriter w, Event e, int remaining) throws IOException {
+        w.beginObject();
+        w.name("id").value(e.id);
+        w.name("event_name").value(e.eventName != null ? e.eventName : "");
+        w.name("event_date").value(e.eventDate);
+        w.name("venue").value(e.venue != null ? e.venue : "");
+        w.name("reg_fee").value(e.regFee);
+        w.name("reg_close_date").value(e.regCloseDate);
+        w.name("max_participants").value(e.maxParticipants);
+        writeSeatsRemaining(w, remaining, e.maxParticipants);
+        w.endObject();
+    }
+
+    static void writeSeatsRemaining(JsonWriter w, int remaining, int maxParticipants) throws IOException {
+        w.name("seats_remaining");
+        if (remaining >= 0) {
+            w.value(remaining);
+        } else if (maxParticipants > 0) {
+            w.value(maxParticipants);
+        } else {
+            w.nullValue(); // unlimited
+        }
+    }
+
+    /** True if an If-None-Match header value matches the given ETag (weak comparison). */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) return false;
+        if (etag.startsWith("W/")) etag = etag.substring(2);
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals("*") || t.equals(etag)) return true;
+        }
+        return false;
+    }
+}
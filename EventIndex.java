@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory search index over the event catalog, used by /events/search.
+ *
+ * Events are kept in a skip list ordered by (event_date, id) for date ranges and
+ * paging, and every word of event_name and venue is an entry in a sorted token map, so
+ * a prefix query is a subMap range. A rare query word is answered from its posting
+ * lists; a common one is checked while walking the date range, which stops after one
+ * page. EventCatalog builds a fresh index on every full load and adds single events as
+ * they are inserted. All maps are concurrent, so searches never lock and never touch
+ * MySQL.
+ */
+public final class EventIndex {
+
+    /** Search parameters; null / NaN fields mean "no constraint". */
+    public static final class Query {
+        String text;
+        String fromDate;          // inclusive, yyyy-MM-dd
+        String toDate;            // inclusive
+        double minFee = Double.NaN;
+        double maxFee = Double.NaN;
+        String openOn;            // only events whose reg_close_date >= this date
+        String afterDate;         // keyset paging: strictly after (afterDate, afterId)
+        int afterId;
+        int limit = 50;
+    }
+
+    // key: event_date + '#' + zero-padded id, so the natural order is (date, id)
+    private final ConcurrentSkipListMap<String, EventCatalog.Event> byDate = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Set<Integer>> tokens = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, EventCatalog.Event> byId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String[]> wordsById = new ConcurrentHashMap<>();
+
+    // fewer text matches than this: look them up directly instead of walking the date range
+    private static final int SELECTIVE = 64;
+
+    public static EventIndex of(List<EventCatalog.Event> events) {
+        EventIndex index = new EventIndex();
+        for (EventCatalog.Event e : events) {
+            index.add(e);
+        }
+        return index;
+    }
+
+    public void add(EventCatalog.Event e) {
+        List<String> words = tokenize(e.eventName);
+        words.addAll(tokenize(e.venue));
+        for (String t : words) {
+            tokens.computeIfAbsent(t, k -> ConcurrentHashMap.newKeySet()).add(e.id);
+        }
+        wordsById.put(e.id, words.toArray(new String[0]));
+        byId.put(e.id, e);
+        byDate.put(key(e.eventDate, e.id), e);
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    // ----- Search -----
+
+    /** Matching events in (event_date, id) order, at most q.limit of them. */
+    public List<EventCatalog.Event> search(Query q) {
+        NavigableMap<String, EventCatalog.Event> range = byDate;
+        String low = q.afterDate != null ? key(q.afterDate, q.afterId) : null;
+        if (q.fromDate != null && (low == null || q.fromDate.compareTo(q.afterDate) > 0)) {
+            range = range.tailMap(q.fromDate, true);  // "date" sorts before every "date#id"
+        } else if (low != null) {
+            range = range.tailMap(low, false);
+        }
+        if (q.toDate != null) {
+            range = range.headMap(q.toDate + "#\uffff", true);
+        }
+
+        List<String> words = tokenize(q.text);
+        if (!words.isEmpty()) {
+            // the rarest word decides the plan: a short posting list is looked up by id,
+            // a common word is cheaper to check while walking the date range
+            String rarest = null;
+            int fewest = Integer.MAX_VALUE;
+            for (String w : words) {
+                int n = postings(w, fewest);
+                if (n < fewest) {
+                    fewest = n;
+                    rarest = w;
+                }
+            }
+            if (fewest == 0) return Collections.emptyList();
+            if (fewest < SELECTIVE) return lookup(rarest, words, range, q);
+        }
+
+        List<EventCatalog.Event> out = new ArrayList<>(Math.min(q.limit, 64));
+        for (EventCatalog.Event e : range.values()) {
+            if (matches(e, q) && hasWords(e.id, words)) {
+                out.add(e);
+                if (out.size() == q.limit) break;
+            }
+        }
+        return out;
+    }
+
+    private List<EventCatalog.Event> lookup(String word, List<String> words,
+                                            NavigableMap<String, EventCatalog.Event> range, Query q) {
+        Set<Integer> ids = new HashSet<>();
+        for (Set<Integer> posting : tokens.subMap(word, true, word + '\uffff', false).values()) {
+            ids.addAll(posting);
+        }
+        List<EventCatalog.Event> hits = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            EventCatalog.Event e = byId.get(id);
+            if (e != null && range.containsKey(key(e.eventDate, e.id)) && matches(e, q) && hasWords(id, words)) {
+                hits.add(e);
+            }
+        }
+        hits.sort(Comparator.comparing((EventCatalog.Event e) -> key(e.eventDate, e.id)));
+        return hits.size() > q.limit ? new ArrayList<>(hits.subList(0, q.limit)) : hits;
+    }
+
+    // number of ids indexed under tokens starting with word, counting no further than cap
+    private int postings(String word, int cap) {
+        int n = 0;
+        for (Set<Integer> posting : tokens.subMap(word, true, word + '\uffff', false).values()) {
+            n += posting.size();
+            if (n >= cap) break;
+        }
+        return n;
+    }
+
+    // every query word is a prefix of some word of the event (AND across words)
+    private boolean hasWords(int id, List<String> words) {
+        if (words.isEmpty()) return true;
+        String[] own = wordsById.get(id);
+        if (own == null) return false;
+        for (String w : words) {
+            boolean found = false;
+            for (String t : own) {
+                if (t.startsWith(w)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(EventCatalog.Event e, Query q) {
+        if (!Double.isNaN(q.minFee) && e.regFee < q.minFee) return false;
+        if (!Double.isNaN(q.maxFee) && e.regFee > q.maxFee) return false;
+        if (q.openOn != null && e.regCloseDate.compareTo(q.openOn) < 0) return false;
+        return true;
+    }
+
+    private static String key(String date, int id) {
+        // 10 digits keep ids in numeric order within a date
+        String n = Integer.toString(id);
+        return date + "#" + "0000000000".substring(Math.min(10, n.length())) + n;
+    }
+
+    /** Lower-cased words (letters and digits) of s; empty for null. */
+    static List<String> tokenize(String s) {
+        List<String> out = new ArrayList<>();
+        if (s == null) return out;
+        String lower = s.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean word = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                out.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * application/x-www-form-urlencoded parser shared by all POST handlers (and used for
+ * query strings too).
+ *
+ * The body is read into a per-thread buffer, refusing anything over the size cap, and
+ * percent/plus-decoded in place as UTF-8. Fields live in two small parallel arrays;
+ * forms here have fewer than ten fields, so a linear scan beats hashing. The typed
+ * accessors throw IllegalArgumentException naming the field, which handlers turn into
+ * a 400 instead of the old 500 from Integer.parseInt / Date.valueOf.
+ */
+public final class FormData {
+
+    public static final int DEFAULT_MAX_BYTES = Integer.getInteger("form.maxBytes", 64 * 1024);
+
+    /** Thrown when a body is larger than the cap; handlers answer 413. */
+    public static class TooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        TooLargeException(int max) {
+            super("Request body larger than " + max + " bytes");
+        }
+    }
+
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[4096]);
+
+    private String[] names = new String[8];
+    private String[] values = new String[8];
+    private int size;
+
+    private FormData() {
+    }
+
+    // ----- Parsing -----
+
+    public static FormData read(InputStream in) throws IOException {
+        return read(in, DEFAULT_MAX_BYTES);
+    }
+
+    public static FormData read(InputStream in, int maxBytes) throws IOException {
+        byte[] buf = BUFFER.get();
+        int len = 0;
+        while (true) {
+            if (len == buf.length) {
+                if (len > maxBytes) throw new TooLargeException(maxBytes);
+                // room for one byte past the cap, so an oversized body is noticed
+                buf = Arrays.copyOf(buf, Math.min(buf.length * 2, maxBytes + 1));
+                BUFFER.set(buf);
+            }
+            int n = in.read(buf, len, buf.length - len);
+            if (n < 0) break;
+            len += n;
+        }
+        if (len > maxBytes) throw new TooLargeException(maxBytes);
+        return parse(buf, 0, len);
+    }
+
+    /** Parses a raw (still encoded) query string; null gives an empty form. */
+    public static FormData parseQuery(String rawQuery) {
+        if (rawQuery == null || rawQuery.isEmpty()) return new FormData();
+        byte[] bytes = rawQuery.getBytes(StandardCharsets.UTF_8);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /** Parses buf[off, off+len). Decodes in place, so the bytes are overwritten. */
+    static FormData parse(byte[] buf, int off, int len) {
+        FormData form = new FormData();
+        int end = off + len;
+        int start = off;
+        while (start < end) {
+            int amp = start;
+            while (amp < end && buf[amp] != '&') amp++;
+            int eq = start;
+            while (eq < amp && buf[eq] != '=') eq++;
+            if (amp > start) {
+                String name = decode(buf, start, eq);
+                String value = eq < amp ? decode(buf, eq + 1, amp) : "";
+                form.add(name, value);
+            }
+            start = amp + 1;
+        }
+        return form;
+    }
+
+    // decodes buf[from, to) in place and returns it as a UTF-8 string
+    private static String decode(byte[] buf, int from, int to) {
+        int w = from;
+        for (int r = from; r < to; r++) {
+            byte b = buf[r];
+            if (b == '+') {
+                buf[w++] = ' ';
+            } else if (b == '%' && r + 2 < to && hex(buf[r + 1]) >= 0 && hex(buf[r + 2]) >= 0) {
+                buf[w++] = (byte) ((hex(buf[r + 1]) << 4) | hex(buf[r + 2]));
+                r += 2;
+            } else {
+                buf[w++] = b; // includes a lone '%', kept as-is
+            }
+        }
+        return new String(buf, from, w - from, StandardCharsets.UTF_8);
+    }
+
+    private static int hex(byte b) {
+        if (b >= '0' && b <= '9') return b - '0';
+        if (b >= 'a' && b <= 'f') return b - 'a' + 10;
+        if (b >= 'A' && b <= 'F') return b - 'A' + 10;
+        return -1;
+    }
+
+    private void add(String name, String value) {
+        // last value wins, like the old per-handler loops
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                values[i] = value;
+                return;
+            }
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size++] = value;
+    }
+
+    // ----- Accessors -----
+
+    public boolean has(String name) {
+        return get(name) != null;
+    }
+
+    /** Raw value, or null when the field is absent. */
+    public String get(String name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) return values[i];
+        }
+        return null;
+    }
+
+    public String get(String name, String defaultValue) {
+        String v = get(name);
+        return v != null ? v : defaultValue;
+    }
+
+    /** Value that must be present and non-empty. */
+    public String require(String name) {
+        String v = get(name);
+        if (v == null || v.isEmpty()) throw new IllegalArgumentException("Missing " + name);
+        return v;
+    }
+
+    public int getInt(String name) {
+        String v = require(name);
+        try {
+            return Integer.parseInt(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + v);
+        }
+    }
+
+    public int getInt(String name, int defaultValue) {
+        String v = get(name);
+        return v == null || v.isEmpty() ? defaultValue : getInt(name);
+    }
+
+    public double getDouble(String name) {
+        String v = require(name);
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + name + ": " + v);
+        }
+    }
+
+    /** yyyy-MM-dd, as sent by &lt;input type="date"&gt;. */
+    public java.sql.Date getDate(String name) {
+        String v = require(name);
+        try {
+            return java.sql.Date.valueOf(v.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid date for " + name + ": " + v);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
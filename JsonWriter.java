@@ -0,0 +1,230 @@
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Minimal streaming JSON writer that encodes straight to UTF-8 bytes.
+ *
+ * Output goes into one fixed byte buffer that is flushed to the target stream when it
+ * fills up, so writing a row costs no StringBuilder, char[] or String.format garbage.
+ * Writers are meant to be reused: {@link #forThread(OutputStream)} hands out one per
+ * thread, reset to the new target. Commas between values are inserted automatically.
+ */
+public final class JsonWriter {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final int MAX_DEPTH = 32;
+    private static final ThreadLocal<JsonWriter> PER_THREAD = ThreadLocal.withInitial(() -> new JsonWriter(8192));
+
+    private final byte[] buf;
+    private int pos;
+    private OutputStream out;
+
+    // per nesting level: does the next value need a leading comma?
+    private final boolean[] needComma = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(int bufferSize) {
+        this.buf = new byte[bufferSize];
+    }
+
+    /** The calling thread's writer, reset to write to {@code target}. */
+    public static JsonWriter forThread(OutputStream target) {
+        return PER_THREAD.get().reset(target);
+    }
+
+    public JsonWriter reset(OutputStream target) {
+        this.out = target;
+        this.pos = 0;
+        this.depth = 0;
+        this.afterName = false;
+        this.needComma[0] = false;
+        return this;
+    }
+
+    // ----- Structure -----
+
+    public JsonWriter beginArray() throws IOException { return open('['); }
+    public JsonWriter endArray() throws IOException { return close(']'); }
+    public JsonWriter beginObject() throws IOException { return open('{'); }
+    public JsonWriter endObject() throws IOException { return close('}'); }
+
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        writeString(name);
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    private JsonWriter open(char c) throws IOException {
+        separator();
+        put((byte) c);
+        if (++depth >= MAX_DEPTH) throw new IOException("JSON nested too deeply");
+        needComma[depth] = false;
+        return this;
+    }
+
+    private JsonWriter close(char c) throws IOException {
+        depth--;
+        put((byte) c);
+        return this;
+    }
+
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (needComma[depth]) put((byte) ',');
+        needComma[depth] = true;
+    }
+
+    // ----- Values -----
+
+    public JsonWriter value(String s) throws IOException {
+        separator();
+        if (s == null) {
+            writeAscii("null");
+        } else {
+            writeString(s);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long v) throws IOException {
+        separator();
+        writeLong(v);
+        return this;
+    }
+
+    /** Same text as Double.toString for the usual fee values ("50.0", "12.5"), without the String. */
+    public JsonWriter value(double v) throws IOException {
+        separator();
+        if (Double.isNaN(v) || Double.isInfinite(v)) {
+            writeAscii("null");
+        } else if (v == Math.rint(v) && Math.abs(v) < 1e7) {
+            writeLong((long) v);
+            writeAscii(".0");
+        } else {
+            writeAscii(Double.toString(v));
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean b) throws IOException {
+        separator();
+        writeAscii(b ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separator();
+        writeAscii("null");
+        return this;
+    }
+
+    // ----- Raw output (CSV and other text sharing the same buffer) -----
+
+    /** Writes one ASCII character as is: no separator, no escaping. */
+    public JsonWriter raw(char c) throws IOException {
+        put((byte) c);
+        return this;
+    }
+
+    /** Writes s as UTF-8 as is: no quotes, separator or escaping. */
+    public JsonWriter rawText(String s) throws IOException {
+        encode(s, false);
+        return this;
+    }
+
+    /** Writes any pending bytes to the target stream. */
+    public void flush() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    // ----- Encoding -----
+
+    private void writeString(String s) throws IOException {
+        put((byte) '"');
+        encode(s, true);
+        put((byte) '"');
+    }
+
+    private void encode(String s, boolean escape) throws IOException {
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80 && !escape) {
+                put((byte) c);
+            } else if (c < 0x80) {
+                switch (c) {
+                    case '"': put((byte) '\\'); put((byte) '"'); break;
+                    case '\\': put((byte) '\\'); put((byte) '\\'); break;
+                    case '\b': put((byte) '\\'); put((byte) 'b'); break;
+                    case '\f': put((byte) '\\'); put((byte) 'f'); break;
+                    case '\n': put((byte) '\\'); put((byte) 'n'); break;
+                    case '\r': put((byte) '\\'); put((byte) 'r'); break;
+                    case '\t': put((byte) '\\'); put((byte) 't'); break;
+                    default:
+                        if (c < 0x20) {
+                            put((byte) '\\'); put((byte) 'u'); put((byte) '0'); put((byte) '0');
+                            put(HEX[c >> 4]); put(HEX[c & 0xf]);
+                        } else {
+                            put((byte) c);
+                        }
+                }
+            } else if (c < 0x800) {
+                put((byte) (0xc0 | (c >> 6)));
+                put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                put((byte) (0xf0 | (cp >> 18)));
+                put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                put((byte) (0x80 | (cp & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                put((byte) '?'); // unpaired surrogate, not encodable
+            } else {
+                put((byte) (0xe0 | (c >> 12)));
+                put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    private void writeLong(long v) throws IOException {
+        if (v == Long.MIN_VALUE) {
+            writeAscii("-9223372036854775808");
+            return;
+        }
+        if (v < 0) {
+            put((byte) '-');
+            v = -v;
+        }
+        // digits come out backwards; reserve room so they can be written in place
+        if (pos + 20 > buf.length) flush();
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = pos - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) put((byte) s.charAt(i));
+    }
+
+    private void put(byte b) throws IOException {
+        if (pos == buf.length) flush();
+        buf[pos++] = b;
+    }
+}
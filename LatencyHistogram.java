@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-linear buckets (HdrHistogram style, coarse).
+ *
+ * Values are recorded in microseconds. Below 8us each value has its own bucket; above
+ * that every power of two is split into 8 sub-buckets, so any recorded value is off by
+ * at most 12.5%. Recording is a couple of shifts and one atomic increment: no locks and
+ * no allocation, so it can sit on every request.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_MSB = 40; // ~12 days in microseconds, far beyond any request
+    private static final int BUCKETS = (MAX_MSB - SUB_BITS + 2) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(index(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+    }
+
+    static int index(long micros) {
+        if (micros < SUB) return (int) micros;
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        if (msb > MAX_MSB) return BUCKETS - 1;
+        int sub = (int) (micros >>> (msb - SUB_BITS)) & (SUB - 1);
+        return (msb - SUB_BITS + 1) * SUB + sub;
+    }
+
+    /** Largest value (in microseconds) that falls into bucket i. */
+    static long upperBound(int i) {
+        if (i < SUB) return i;
+        int msb = i / SUB + SUB_BITS - 1;
+        long sub = i % SUB;
+        long lower = (1L << msb) | (sub << (msb - SUB_BITS));
+        return lower + (1L << (msb - SUB_BITS)) - 1;
+    }
+
+    public long getCount() { return count.get(); }
+    public long getSumMicros() { return sumMicros.get(); }
+
+    /** Number of recorded values &lt;= the given bound (bucket precision). */
+    public long countAtOrBelow(long micros) {
+        long n = 0;
+        int last = index(micros);
+        for (int i = 0; i <= last; i++) {
+            if (upperBound(i) <= micros) n += counts.get(i);
+        }
+        return n;
+    }
+
+    /** Approximate percentile (0-100) in microseconds; 0 when empty. */
+    public long percentileMicros(double p) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(p / 100.0 * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,231 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Startup and shutdown of the server.
+ *
+ * Before the port is opened {@link #start()} fills the connection pools, loads the
+ * event catalog (seat counts and search index with it), hashes one password and runs
+ * server.warmupIterations synthetic requests straight through the registered handlers,
+ * so the first real users do not pay for class loading, JIT and connection setup.
+ * Only then is the server started and /health/ready answers 200.
+ *
+ * On SIGTERM the shutdown hook marks the server draining: /health/ready turns 503 so a
+ * load balancer stops routing here, new requests get 503 with Connection: close, and
+ * the hook waits up to server.drainTimeoutMs for in-flight exchanges, then for queued
+ * writes, before stopping the server and closing the pools. /health/live stays 200
+ * until the very end.
+ */
+public class Lifecycle {
+
+    public enum State { STARTING, READY, DRAINING, STOPPED }
+
+    private static final int WARMUP_ITERATIONS = Integer.getInteger("server.warmupIterations", 200);
+    private static final long DRAIN_TIMEOUT_MS = Long.getLong("server.drainTimeoutMs", 20_000);
+    private static final long READY_GRACE_MS = Long.getLong("server.readyGraceMs", 0);
+
+    private final HttpServer server;
+    private final ServerExecutor executor;
+    private final Map<String, HttpHandler> handlers = new LinkedHashMap<>();
+    private volatile State state = State.STARTING;
+
+    public Lifecycle(HttpServer server, ServerExecutor executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** Remembers a context's handler so warm-up can call it without going through the network. */
+    public void register(String path, HttpHandler handler) {
+        handlers.put(path, handler);
+    }
+
+    // ----- Startup -----
+
+    /** Warms pools, caches and handlers, then opens the port. */
+    public void start() {
+        long t0 = System.nanoTime();
+        boolean db = warmDatabase();
+        warmUp(db);
+        server.start();
+        state = State.READY;
+        System.out.println("Warm-up took " + (System.nanoTime() - t0) / 1_000_000 + "ms"
+                + (db ? "" : " (database unavailable, DB-backed warm-up skipped)"));
+    }
+
+    private boolean warmDatabase() {
+        try {
+            DBConnection.pool().fill();
+            for (DBConnection.Replica r : DBConnection.replicas()) {
+                r.getPool().fill();
+            }
+            Main.catalog.get(); // also seeds seat counts and builds the search index
+            return true;
+        } catch (Exception e) {
+            System.err.println("Warm-up: database not reachable: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void warmUp(boolean db) {
+        // one hash + verify gets PBKDF2 compiled before the first login
+        Main.passwords.verify("warm-up", Main.passwords.hash("warm-up"));
+
+        String etag = null;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            if (db) {
+                WarmupExchange ex = call("GET", "/events-data", "/events-data", null, null);
+                if (etag == null && ex != null) etag = ex.getResponseHeaders().getFirst("ETag");
+                if (etag != null) call("GET", "/events-data", "/events-data", "If-None-Match", etag);
+                call("GET", "/events/search", "/events/search?q=a&open=1&limit=20", null, null);
+            }
+            call("GET", "/", "/events.html", null, null);
+            call("GET", "/", "/login.html", "Accept-Encoding", "gzip");
+            call("POST", "/register", "/register", null, null); // 401 path: cookie and session lookup
+            call("GET", "/metrics", "/metrics", null, null);
+        }
+    }
+
+    private WarmupExchange call(String method, String context, String uri, String header, String value) {
+        HttpHandler h = handlers.get(context);
+        if (h == null) return null;
+        WarmupExchange ex = new WarmupExchange(method, uri);
+        if (header != null) ex.getRequestHeaders().add(header, value);
+        try {
+            h.handle(ex);
+        } catch (Exception e) {
+            // warm-up is best effort
+        }
+        return ex;
+    }
+
+    // ----- Shutdown -----
+
+    /** Registers the drain sequence to run on SIGTERM / SIGINT. */
+    public void installShutdownHook(Runnable closeResources) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> drain(closeResources), "shutdown"));
+    }
+
+    void drain(Runnable closeResources) {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        state = State.DRAINING;
+        System.out.println("Draining: " + executor.getInFlight() + " requests in flight");
+        try {
+            if (READY_GRACE_MS > 0) Thread.sleep(READY_GRACE_MS); // let the load balancer see /health/ready fail
+            while (executor.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            if (Main.writes != null) {
+                Main.writes.shutdown(Math.max(0, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException ignored) {
+        }
+        if (executor.getInFlight() > 0) {
+            System.err.println("Drain deadline passed with " + executor.getInFlight() + " requests in flight");
+        }
+        server.stop(0);
+        try {
+            executor.shutdown(Math.max(0, deadline - System.currentTimeMillis()));
+        } catch (InterruptedException ignored) {
+        }
+        closeResources.run();
+        state = State.STOPPED;
+    }
+
+    /** While draining, new exchanges get 503 and the connection is closed. */
+    public Filter gate() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (state != State.DRAINING && state != State.STOPPED) {
+                    chain.doFilter(exchange);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Connection", "close");
+                Responses.busy(exchange, "Server shutting down");
+            }
+
+            @Override
+            public String description() {
+                return "Rejects requests while draining";
+            }
+        };
+    }
+
+    // ----- Health endpoints -----
+
+    /** GET /health/ready: 200 only when warmed up and not draining. */
+    public HttpHandler readiness() {
+        return exchange -> respond(exchange, state == State.READY ? 200 : 503, state.name());
+    }
+
+    /** GET /health/live: 200 as long as the process can serve at all. */
+    public HttpHandler liveness() {
+        return exchange -> respond(exchange, state != State.STOPPED ? 200 : 503, state.name());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        exchange.getResponseHeaders().add("Cache-Control", "no-store");
+        Responses.text(exchange, status, body);
+    }
+
+    // ----- In-memory exchange for warm-up calls -----
+
+    static final class WarmupExchange extends HttpExchange {
+        private static final InetSocketAddress LOCAL = new InetSocketAddress("127.0.0.1", 0);
+
+        private final String method;
+        private final URI uri;
+        private final Headers requestHeaders = new Headers();
+        private final Headers responseHeaders = new Headers();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private InputStream in = new ByteArrayInputStream(new byte[0]);
+        private OutputStream out = new ByteArrayOutputStream();
+        private int status = -1;
+
+        WarmupExchange(String method, String uri) {
+            this.method = method;
+            this.uri = URI.create(uri);
+        }
+
+        @Override public Headers getRequestHeaders() { return requestHeaders; }
+        @Override public Headers getResponseHeaders() { return responseHeaders; }
+        @Override public URI getRequestURI() { return uri; }
+        @Override public String getRequestMethod() { return method; }
+        @Override public HttpContext getHttpContext() { return null; }
+        @Override public void close() { }
+        @Override public InputStream getRequestBody() { return in; }
+        @Override public OutputStream getResponseBody() { return out; }
+        @Override public void sendResponseHeaders(int code, long length) { status = code; }
+        @Override public InetSocketAddress getRemoteAddress() { return LOCAL; }
+        @Override public int getResponseCode() { return status; }
+        @Override public InetSocketAddress getLocalAddress() { return LOCAL; }
+        @Override public String getProtocol() { return "HTTP/1.1"; }
+        @Override public Object getAttribute(String name) { return attributes.get(name); }
+        @Override public void setAttribute(String name, Object value) { attributes.put(name, value); }
+        @Override public void setStreams(InputStream i, OutputStream o) {
+            if (i != null) in = i;
+            if (o != null) out = o;
+        }
+        @Override public HttpPrincipal getPrincipal() { return null; }
+    }
+}
@@ -0,0 +1,566 @@
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Registration-day load generator: many students log in, load /events-data and
+ * register for one of a few popular events within seconds.
+ *
+ *   javac -d out *.java
+ *   java -cp out LoadTest                          (server in-process, no database needed)
+ *
+ * Without a URL, LoadTest starts Main in its own JVM on {@link MemoryDatabase}
+ * (-Ddb.driver=MemoryDatabase -Ddb.url=jdbc:memory:) with limits.trustForwardedFor on,
+ * after seeding loadtest.events events of loadtest.seats seats and the loadtest.users
+ * accounts. Server and load then share one machine, which is fine for comparing runs.
+ * To measure a real deployment, start it separately and pass its URL:
+ *
+ *   java -Dlimits.trustForwardedFor=true -Ddb.driver=MemoryDatabase -Ddb.url=jdbc:memory: -cp out Main
+ *   java -cp out LoadTest http://127.0.0.1:8080
+ *
+ * Each virtual user is a browser on its own (virtual) thread, sending X-Forwarded-For
+ * with its own address so per-IP admission limits apply per student, not to the whole
+ * test. It loops login -> events-data (conditional, gzip accepted) -> register ->
+ * think time. Concurrency ramps through loadtest.steps, loadtest.stepSeconds per step,
+ * and every step reports throughput, p50/p95/p99 per endpoint, error, throttled
+ * (429/503) and 409 rates. A user whose login fails or who is throttled backs off like a
+ * browser would (Retry-After when the server sends one) instead of retrying at once.
+ * At the end the saturation knee is the last step where more users still bought at
+ * least loadtest.kneeGain more throughput without errors; throttled answers are not
+ * counted as throughput.
+ *
+ * Against a separate server the test signs up loadtest.users accounts
+ * (loadtest-N@example.com, skipped with -Dloadtest.signup=false) and fills the popular
+ * events, so point it at MemoryDatabase or a scratch MySQL, never a real one. Run it on
+ * a different machine than the server for absolute numbers.
+ */
+public class LoadTest {
+
+    private static final int[] STEPS = parseSteps(System.getProperty("loadtest.steps", "25,50,100,200,400,800,1600"));
+    private static final long STEP_SECONDS = Long.getLong("loadtest.stepSeconds", 20);
+    private static final long THINK_MS = Long.getLong("loadtest.thinkMs", 250);
+    private static final int USERS = Integer.getInteger("loadtest.users", 2000);
+    private static final int HOT_EVENTS = Integer.getInteger("loadtest.hotEvents", 5);
+    private static final double HOT_SHARE = Double.parseDouble(System.getProperty("loadtest.hotShare", "0.8"));
+    private static final double KNEE_GAIN = Double.parseDouble(System.getProperty("loadtest.kneeGain", "0.1"));
+    private static final double MAX_ERROR_RATE = Double.parseDouble(System.getProperty("loadtest.maxErrorRate", "0.2"));
+    private static final long MAX_BACKOFF_MS = Long.getLong("loadtest.maxBackoffMs", 10_000);
+    private static final String PASSWORD = System.getProperty("loadtest.password", "LoadTest-123");
+    private static final int SEED_EVENTS = Integer.getInteger("loadtest.events", 20);
+    private static final int SEATS = Integer.getInteger("loadtest.seats", 200);
+
+    static final int LOGIN = 0, EVENTS = 1, REGISTER = 2;
+    static final String[] ENDPOINTS = { "login", "events-data", "register" };
+
+    private final String base;
+    private final HttpClient client;
+    private final AtomicInteger nextAccount = new AtomicInteger();
+    private volatile Catalog catalog = new Catalog(null, new int[0], new boolean[0]);
+
+    LoadTest(String base) {
+        this.base = base;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        // like a browser, resend a POST when a reused keep-alive connection turns out to be closed
+        if (System.getProperty("jdk.httpclient.enableAllMethodRetry") == null) {
+            System.setProperty("jdk.httpclient.enableAllMethodRetry", "true");
+        }
+        boolean inProcess = args.length == 0;
+        if (inProcess) startInProcess();
+        LoadTest test = new LoadTest(inProcess ? "http://127.0.0.1:8080" : args[0]);
+        test.checkReady(inProcess ? 120 : 0);
+        if (!inProcess && !"false".equals(System.getProperty("loadtest.signup"))) test.signUp();
+        test.checkLogin();
+
+        ExecutorService threads = ServerExecutor.newVirtualThreadExecutor();
+        System.out.println("Virtual users on " + (threads != null ? "virtual threads" : "platform threads")
+                + ", " + STEP_SECONDS + "s per step, think time " + THINK_MS + "ms");
+        if (threads == null) threads = Executors.newCachedThreadPool();
+
+        List<Step> steps = new ArrayList<>();
+        try {
+            for (int users : STEPS) {
+                Step step = test.run(threads, users);
+                step.print();
+                steps.add(step);
+                if (step.errorRate() > MAX_ERROR_RATE) {
+                    System.out.println("Stopping the ramp: error rate above loadtest.maxErrorRate");
+                    break;
+                }
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        report(steps);
+        if (inProcess) System.exit(0); // the server threads would keep the JVM alive
+    }
+
+    // ----- Setup -----
+
+    /** Seeds MemoryDatabase with events and accounts, then starts Main on it in this JVM. */
+    private static void startInProcess() throws Exception {
+        // must be set before Main and DBConnection are first touched
+        System.setProperty("db.driver", "MemoryDatabase");
+        System.setProperty("db.url", "jdbc:memory:loadtest");
+        if (System.getProperty("limits.trustForwardedFor") == null) System.setProperty("limits.trustForwardedFor", "true");
+
+        for (int i = 0; i < SEED_EVENTS; i++) {
+            MemoryDatabase.addEvent("Load test event " + i, String.format("2030-%02d-%02d", 1 + i % 12, 1 + i % 28), SEATS);
+        }
+        // one hash for every account: the salt is stored in it, and hashing 2000 passwords would take minutes
+        String hash = Main.passwords.hash(PASSWORD);
+        for (int i = 0; i < USERS; i++) {
+            MemoryDatabase.addUser("Load Test " + i, email(i), hash, "student");
+        }
+        System.out.println("Starting Main in-process on MemoryDatabase: " + SEED_EVENTS + " events of " + SEATS
+                + " seats, " + USERS + " accounts");
+        Main.main(new String[0]);
+    }
+
+    /** Exits unless the server answers /health/ready, waiting up to waitSeconds for its warm-up. */
+    private void checkReady(int waitSeconds) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(waitSeconds);
+        int status;
+        while (true) {
+            try {
+                status = client.send(get("/health/ready", 0, null).build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+            } catch (IOException e) {
+                status = -1;
+            }
+            if (status == 200 || System.nanoTime() > deadline) break;
+            Thread.sleep(250);
+        }
+        if (status != 200) {
+            System.err.println(base + "/health/ready answered " + status + "; start Main first");
+            System.exit(1);
+        }
+    }
+
+    /** Creates the test accounts; existing ones just fail to insert again. */
+    private void signUp() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        AtomicInteger failed = new AtomicInteger();
+        for (int i = 0; i < USERS; i++) {
+            int account = i;
+            pool.execute(() -> {
+                String form = "name=Load+Test+" + account + "&roll_no=LT" + account + "&email=" + enc(email(account))
+                        + "&phone_number=0000000000&department=CSE&year=1&password=" + enc(PASSWORD);
+                try {
+                    int status = client.send(post("/signup", account, form, null).build(),
+                            HttpResponse.BodyHandlers.discarding()).statusCode();
+                    if (status != 302) failed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.MINUTES);
+        System.out.println("Signed up " + (USERS - failed.get()) + " of " + USERS + " accounts ("
+                + failed.get() + " failed or already existed)");
+    }
+
+    private void checkLogin() throws Exception {
+        if (login(0) == null) {
+            System.err.println("Login as " + email(0) + " failed; check loadtest.password and the server's database");
+            System.exit(1);
+        }
+    }
+
+    // ----- One step of the ramp -----
+
+    Step run(ExecutorService threads, int users) throws InterruptedException {
+        Recorder[] recorders = new Recorder[users];
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(STEP_SECONDS);
+        CountDownLatch done = new CountDownLatch(users);
+        long start = System.nanoTime();
+        for (int u = 0; u < users; u++) {
+            Recorder r = recorders[u] = new Recorder();
+            threads.execute(() -> {
+                try {
+                    browse(r, end);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        // stragglers get one request timeout past the end of the step
+        done.await(STEP_SECONDS + 35, TimeUnit.SECONDS);
+        return new Step(users, System.nanoTime() - start, recorders);
+    }
+
+    /** One browser: a new student arrives, logs in, looks at the events and registers. */
+    private void browse(Recorder r, long end) {
+        String etag = null;
+        Catalog seen = null;
+        int failures = 0; // consecutive failed or throttled scenarios, drives the backoff
+        while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+            int account = nextAccount.getAndIncrement() % USERS;
+            try {
+                long t0 = System.nanoTime();
+                HttpResponse<Void> login = client.send(loginRequest(account), HttpResponse.BodyHandlers.discarding());
+                String cookie = sessionCookie(login);
+                r.record(LOGIN, System.nanoTime() - t0, cookie != null ? Recorder.OK : Recorder.classifyFailed(login.statusCode()));
+                if (cookie == null) {
+                    backOff(login, ++failures);
+                    continue;
+                }
+
+                t0 = System.nanoTime();
+                HttpRequest.Builder rb = get("/events-data", account, cookie).header("Accept-Encoding", "gzip");
+                if (etag != null) rb.header("If-None-Match", etag);
+                HttpResponse<byte[]> events = client.send(rb.build(), HttpResponse.BodyHandlers.ofByteArray());
+                r.record(EVENTS, System.nanoTime() - t0, Recorder.classify(events.statusCode()));
+                if (events.statusCode() == 200) {
+                    etag = events.headers().firstValue("ETag").orElse(null);
+                    seen = catalog(etag, events);
+                } else if (events.statusCode() != 304 || seen == null) {
+                    backOff(events, ++failures);
+                    continue;
+                }
+
+                int eventId = seen.pick();
+                if (eventId < 0) {
+                    backOff(null, ++failures);
+                    continue;
+                }
+                t0 = System.nanoTime();
+                HttpResponse<String> reg = client.send(post("/register", account, "event_id=" + eventId, cookie).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                long dt = System.nanoTime() - t0;
+                int outcome = Recorder.classify(reg.statusCode());
+                if (reg.statusCode() == 409) {
+                    outcome = reg.body().startsWith("Already") ? Recorder.DUPLICATE : Recorder.FULL;
+                }
+                r.record(REGISTER, dt, outcome);
+                if (outcome == Recorder.THROTTLED || outcome == Recorder.ERROR) {
+                    backOff(reg, ++failures);
+                    continue;
+                }
+                r.scenarios++;
+                failures = 0;
+
+                if (THINK_MS > 0) Thread.sleep(ThreadLocalRandom.current().nextLong(THINK_MS * 2 + 1));
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                r.ioErrors++;
+                try {
+                    backOff(null, ++failures);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits before the next attempt: Retry-After when the response carries one, otherwise
+     * exponential from the think time with full jitter, capped at loadtest.maxBackoffMs.
+     */
+    static void backOff(HttpResponse<?> resp, int failures) throws InterruptedException {
+        long retryAfter = resp == null ? -1 : retryAfterMs(resp.headers().firstValue("Retry-After").orElse(null));
+        long ms;
+        if (retryAfter >= 0) {
+            ms = Math.min(retryAfter, MAX_BACKOFF_MS);
+        } else {
+            long cap = Math.min(MAX_BACKOFF_MS, Math.max(THINK_MS, 50) << Math.min(failures, 10));
+            ms = ThreadLocalRandom.current().nextLong(cap + 1);
+        }
+        if (ms > 0) Thread.sleep(ms);
+    }
+
+    /** Retry-After in delay-seconds form, as millis; -1 if absent or an HTTP date. */
+    static long retryAfterMs(String value) {
+        if (value == null) return -1;
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Session cookie ("name=value") for the account, or null when login did not redirect. */
+    private String login(int account) throws IOException, InterruptedException {
+        return sessionCookie(client.send(loginRequest(account), HttpResponse.BodyHandlers.discarding()));
+    }
+
+    private HttpRequest loginRequest(int account) {
+        String form = "email=" + enc(email(account)) + "&password=" + enc(PASSWORD);
+        return post("/login", account, form, null).build();
+    }
+
+    private static String sessionCookie(HttpResponse<?> resp) {
+        if (resp.statusCode() != 302) return null;
+        String setCookie = resp.headers().firstValue("Set-Cookie").orElse(null);
+        if (setCookie == null) return null;
+        int semi = setCookie.indexOf(';');
+        return semi < 0 ? setCookie : setCookie.substring(0, semi);
+    }
+
+    private HttpRequest.Builder get(String path, int account, String cookie) {
+        return browser(path, account, cookie).GET();
+    }
+
+    private HttpRequest.Builder post(String path, int account, String form, String cookie) {
+        return browser(path, account, cookie)
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form));
+    }
+
+    /** Every request of a virtual user comes from its own address and carries its session. */
+    private HttpRequest.Builder browser(String path, int account, String cookie) {
+        HttpRequest.Builder rb = HttpRequest.newBuilder(URI.create(base + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("X-Forwarded-For", "10." + (account >> 16 & 255) + "." + (account >> 8 & 255) + "." + (account & 255));
+        if (cookie != null) rb.header("Cookie", cookie);
+        return rb;
+    }
+
+    private static String email(int account) {
+        return "loadtest-" + account + "@example.com";
+    }
+
+    private static String enc(String s) {
+        return URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    // ----- Events as the browser sees them -----
+
+    /** Event ids in page order and whether each still shows seats. Parsed once per ETag. */
+    static final class Catalog {
+        final String etag;
+        final int[] ids;
+        final boolean[] open;
+
+        Catalog(String etag, int[] ids, boolean[] open) {
+            this.etag = etag;
+            this.ids = ids;
+            this.open = open;
+        }
+
+        /** A popular event most of the time, otherwise any event that still has seats. */
+        int pick() {
+            if (ids.length == 0) return -1;
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            if (rnd.nextDouble() < HOT_SHARE) return ids[rnd.nextInt(Math.min(HOT_EVENTS, ids.length))];
+            int n = rnd.nextInt(ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                int k = (n + i) % ids.length;
+                if (open[k]) return ids[k];
+            }
+            return ids[n];
+        }
+    }
+
+    private Catalog catalog(String etag, HttpResponse<byte[]> resp) throws IOException {
+        Catalog c = catalog;
+        if (etag != null && etag.equals(c.etag)) return c;
+        byte[] body = resp.body();
+        if (resp.headers().firstValue("Content-Encoding").orElse("").equalsIgnoreCase("gzip")) {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = in.readAllBytes();
+            }
+        }
+        c = parse(etag, new String(body, StandardCharsets.UTF_8));
+        catalog = c;
+        return c;
+    }
+
+    // only needs "id" and "seats_remaining" out of the flat event objects
+    static Catalog parse(String etag, String json) {
+        int[] ids = new int[64];
+        boolean[] open = new boolean[64];
+        int n = 0;
+        int pos = 0;
+        while ((pos = json.indexOf("\"id\":", pos)) >= 0) {
+            pos += 5;
+            int id = readInt(json, pos);
+            int seats = json.indexOf("\"seats_remaining\":", pos);
+            int next = json.indexOf("\"id\":", pos);
+            boolean hasSeats = true;
+            if (seats >= 0 && (next < 0 || seats < next)) {
+                int v = seats + 18;
+                hasSeats = json.startsWith("null", v) || readInt(json, v) > 0;
+            }
+            if (n == ids.length) {
+                ids = Arrays.copyOf(ids, n * 2);
+                open = Arrays.copyOf(open, n * 2);
+            }
+            ids[n] = id;
+            open[n++] = hasSeats;
+        }
+        return new Catalog(etag, Arrays.copyOf(ids, n), Arrays.copyOf(open, n));
+    }
+
+    private static int readInt(String s, int pos) {
+        int v = 0;
+        while (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+            v = v * 10 + s.charAt(pos++) - '0';
+        }
+        return v;
+    }
+
+    // ----- Measurements -----
+
+    /** Per-virtual-user counters, only touched by its own thread until the step is over. */
+    static final class Recorder {
+        static final int OK = 0, FULL = 1, DUPLICATE = 2, THROTTLED = 3, ERROR = 4;
+
+        final long[][] latencies = new long[ENDPOINTS.length][256];
+        final int[] counts = new int[ENDPOINTS.length];
+        final int[][] outcomes = new int[ENDPOINTS.length][5];
+        int scenarios;
+        int ioErrors;
+
+        static int classify(int status) {
+            if (status == 429 || status == 503) return THROTTLED;
+            if (status == 409) return FULL;
+            return status >= 400 ? ERROR : OK;
+        }
+
+        /** Outcome of a request that did not do what it should: throttled, or else an error. */
+        static int classifyFailed(int status) {
+            return classify(status) == THROTTLED ? THROTTLED : ERROR;
+        }
+
+        void record(int endpoint, long nanos, int outcome) {
+            int n = counts[endpoint];
+            if (n == latencies[endpoint].length) latencies[endpoint] = Arrays.copyOf(latencies[endpoint], n * 2);
+            latencies[endpoint][n] = nanos;
+            counts[endpoint] = n + 1;
+            outcomes[endpoint][outcome]++;
+        }
+    }
+
+    /** Merged results of one concurrency level. */
+    static final class Step {
+        final int users;
+        final double seconds;
+        final long[][] sorted = new long[ENDPOINTS.length][];
+        final long[] outcomes = new long[5];
+        long requests;
+        long scenarios;
+        long ioErrors;
+
+        Step(int users, long nanos, Recorder[] recorders) {
+            this.users = users;
+            this.seconds = nanos / 1e9;
+            for (int e = 0; e < ENDPOINTS.length; e++) {
+                int total = 0;
+                for (Recorder r : recorders) total += r.counts[e];
+                long[] all = new long[total];
+                int k = 0;
+                for (Recorder r : recorders) {
+                    System.arraycopy(r.latencies[e], 0, all, k, r.counts[e]);
+                    k += r.counts[e];
+                    for (int o = 0; o < outcomes.length; o++) outcomes[o] += r.outcomes[e][o];
+                }
+                Arrays.sort(all);
+                sorted[e] = all;
+                requests += total;
+            }
+            for (Recorder r : recorders) {
+                scenarios += r.scenarios;
+                ioErrors += r.ioErrors;
+            }
+        }
+
+        /** Answered requests per second, not counting 429/503: throttling is not capacity. */
+        double throughput() { return (requests - outcomes[Recorder.THROTTLED]) / seconds; }
+        double errorRate() { return rate(outcomes[Recorder.ERROR] + ioErrors); }
+        double throttledRate() { return rate(outcomes[Recorder.THROTTLED]); }
+
+        double rate(long n) {
+            return requests + ioErrors == 0 ? 0 : (double) n / (requests + ioErrors);
+        }
+
+        /** Share of /register answers with this outcome (FULL and DUPLICATE only come from there). */
+        double registerRate(int outcome) {
+            return sorted[REGISTER].length == 0 ? 0 : (double) outcomes[outcome] / sorted[REGISTER].length;
+        }
+
+        /** Mean time of login + events-data + register, nanos. */
+        double scenarioNanos() {
+            double total = 0;
+            for (long[] s : sorted) {
+                if (s.length > 0) total += Arrays.stream(s).average().orElse(0);
+            }
+            return total;
+        }
+
+        void print() {
+            System.out.printf("%5d users  %8.1f req/s answered  %7.1f registrations/s  errors %5.2f%%  throttled %5.2f%%"
+                            + "  409 full %5.1f%%  duplicate %5.1f%%%n",
+                    users, throughput(), scenarios / seconds, errorRate() * 100, throttledRate() * 100,
+                    registerRate(Recorder.FULL) * 100, registerRate(Recorder.DUPLICATE) * 100);
+            for (int e = 0; e < ENDPOINTS.length; e++) {
+                long[] s = sorted[e];
+                System.out.printf("        %-12s n=%-8d p50 %8.1f ms   p95 %8.1f ms   p99 %8.1f ms%n", ENDPOINTS[e], s.length,
+                        Bench.percentile(s, 50) / 1e6, Bench.percentile(s, 95) / 1e6, Bench.percentile(s, 99) / 1e6);
+            }
+        }
+    }
+
+    // ----- Capacity model -----
+
+    static void report(List<Step> steps) {
+        if (steps.isEmpty()) return;
+        Step knee = steps.get(0);
+        Step best = knee;
+        for (int i = 1; i < steps.size(); i++) {
+            Step prev = steps.get(i - 1);
+            Step s = steps.get(i);
+            if (s.throughput() > best.throughput()) best = s;
+            boolean scaled = s.throughput() >= prev.throughput() * (1 + KNEE_GAIN);
+            boolean healthy = s.errorRate() + s.throttledRate() <= 0.01;
+            if (scaled && healthy && knee == prev) knee = s;
+        }
+
+        // operational law: with service demand D per scenario and think time Z, throughput
+        // stops growing past N* = (D + Z) / D_max users; X_max stands in for 1 / D_max
+        double scenarioSeconds = steps.get(0).scenarioNanos() / 1e9;
+        double xMax = best.scenarios / best.seconds;
+        double nStar = xMax * (scenarioSeconds + THINK_MS / 1000.0);
+
+        System.out.println();
+        System.out.printf("Peak: %.1f req/s, %.1f registrations/s at %d users%n", best.throughput(), xMax, best.users);
+        if (knee == steps.get(steps.size() - 1)) {
+            System.out.printf("No knee within the ramp: still scaling at %d users; extend loadtest.steps%n", knee.users);
+        } else {
+            System.out.printf("Saturation knee: ~%d users (%.1f req/s, register p99 %.1f ms); beyond it more users mostly add latency%n",
+                    knee.users, knee.throughput(), Bench.percentile(knee.sorted[REGISTER], 99) / 1e6);
+        }
+        System.out.printf("Model: unloaded scenario %.1f ms + think %d ms -> throughput flattens near %.0f users%n",
+                scenarioSeconds * 1000, THINK_MS, nStar);
+    }
+
+    private static int[] parseSteps(String s) {
+        String[] parts = s.split(",");
+        int[] steps = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) steps[i] = Integer.parseInt(parts[i].trim());
+        return steps;
+    }
+}
@@ -1,278 +1,469 @@
 import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpContext;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.concurrent.RejectedExecutionException;
 
 public class Main {
-    static String loggedInUser = null; // store current user's name or email
+    static ServerExecutor executor;
+    static Lifecycle lifecycle;
+    static final EventCatalog catalog = new EventCatalog();
+    static final WriteBehindQueue writes = WriteBehindQueue.fromSystemProperties();
+    static final RegistrationEngine registrations = new RegistrationEngine(writes);
+    static final SessionStore sessions = SessionStore.fromSystemProperties();
+    static final PasswordHasher passwords = PasswordHasher.fromSystemProperties();
+    static final CredentialCache credentials = CredentialCache.fromSystemProperties();
+    static final StaticAssets assets = new StaticAssets(java.nio.file.Paths.get(System.getProperty("user.dir"), "public"),
+            Long.getLong("static.mmapThreshold", 1 << 20));
+    static final SeatFeed seatFeed = SeatFeed.fromSystemProperties();
 
     public static void main(String[] args) throws Exception {
         int port = 8080;
+        // keep-alive tuning for the JDK server; read once when the first server is created,
+        // so set here unless given on the command line
+        defaultProperty("sun.net.httpserver.nodelay", "true");            // small JSON replies are not held back by Nagle
+        defaultProperty("sun.net.httpserver.idleInterval", "60");         // seconds an idle keep-alive connection is kept
+        defaultProperty("sun.net.httpserver.maxIdleConnections", "1000");
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+        executor = ServerExecutor.fromSystemProperties();
+        lifecycle = new Lifecycle(server, executor);
+        assets.start();
+        catalog.setSeatCounts(registrations);
+        registrations.setListener((eventId, remaining) -> {
+            catalog.seatsChanged();
+            seatFeed.seatsChanged(eventId, remaining);
+        });
 
         // Static files
-        server.createContext("/", new StaticHandler());
+        addContext(server, "/", new StaticHandler());
 
         // Dynamic handlers
-        server.createContext("/signup", new SignupHandler());
-        server.createContext("/login", new LoginHandler());
-        server.createContext("/add-event", new AddEventHandler());
-        server.createContext("/events-data", new EventsDataHandler());
-        server.createContext("/register", new RegisterHandler());
-
-        server.setExecutor(null);
-        System.out.println("Server started at http://localhost:" + port);
-        server.start();
+        addContext(server, "/signup", new SignupHandler());
+        addContext(server, "/login", new LoginHandler());
+        addContext(server, "/logout", new LogoutHandler());
+        addContext(server, "/add-event", new AddEventHandler());
+        addContext(server, "/events-data", new EventsDataHandler());
+        addContext(server, "/register", new RegisterHandler());
+        addContext(server, "/events-stream", seatFeed);
+        addContext(server, "/events/search", new SearchHandler());
+        addContext(server, "/admin/import", new BulkImport(sessions, catalog));
+        addContext(server, "/admin/export", new BulkExport(sessions));
+        addContext(server, "/metrics", new Metrics.Handler());
+        registerGauges();
+
+        // probes bypass the filters: liveness must answer while draining
+        server.createContext("/health/ready", lifecycle.readiness());
+        server.createContext("/health/live", lifecycle.liveness());
+
+        server.setExecutor(executor);
+        // on SIGTERM: stop taking requests, let in-flight ones and queued writes finish, then close
+        lifecycle.installShutdownHook(() -> {
+            seatFeed.close();
+            sessions.close();
+            assets.close();
+            passwords.shutdown();
+            DBConnection.close();
+        });
+        lifecycle.start();
+        System.out.println("Server started at http://localhost:" + port + " (executor: " + executor.getMode() + ")");
+    }
+
+    // every context gets per-endpoint metrics, the drain gate, the executor's shedding/timing filter, then rate limits
+    private static void addContext(HttpServer server, String path, HttpHandler handler) {
+        lifecycle.register(path, handler);
+        HttpContext context = server.createContext(path, handler);
+        context.getFilters().add(Metrics.filter(path.equals("/") ? "static" : path));
+        context.getFilters().add(lifecycle.gate());
+        context.getFilters().add(executor.filter());
+        context.getFilters().add(AdmissionFilter.forContext(path));
+    }
+
+    private static void registerGauges() {
+        ConnectionPool pool = DBConnection.pool();
+        Metrics.gauge("ems_db_pool_active", pool::getActive);
+        Metrics.gauge("ems_db_pool_idle", pool::getIdle);
+        Metrics.gauge("ems_db_pool_waiters", pool::getWaiters);
+        Metrics.counter("ems_db_pool_borrow_timeouts", pool::getBorrowTimeouts);
+        Metrics.gauge("ems_db_pool_borrow_avg_seconds", () -> pool.getBorrowNanosAvg() / 1e9);
+        Metrics.gauge("ems_executor_in_flight", executor::getInFlight);
+        Metrics.gauge("ems_executor_queue_depth", executor::getQueueDepth);
+        Metrics.counter("ems_executor_shed", executor::getShed);
+        Metrics.gauge("ems_sessions", sessions::size);
+        Metrics.counter("ems_credential_cache_hits", credentials::getHits);
+        Metrics.counter("ems_credential_cache_misses", credentials::getMisses);
+        Metrics.gauge("ems_password_hash_queue", passwords::getQueueDepth);
+        Metrics.gauge("ems_seat_feed_clients", seatFeed::getClients);
+        Metrics.counter("ems_seat_feed_messages", seatFeed::getMessages);
+        Metrics.counter("ems_seat_feed_rejected", seatFeed::getRejected);
+        Metrics.counter("ems_seat_feed_dropped", seatFeed::getDropped);
+        for (AdmissionFilter f : AdmissionFilter.all()) {
+            String prefix = "ems_admission_" + f.getName();
+            Metrics.counter(prefix + "_admitted", f::getAdmitted);
+            Metrics.counter(prefix + "_rejected_rate", f::getRejectedRate);
+            Metrics.counter(prefix + "_rejected_busy", f::getRejectedBusy);
+            Metrics.gauge(prefix + "_buckets", f::getBuckets);
+        }
+        Metrics.counter("ems_db_reads_primary", DBConnection::getPrimaryReads);
+        Metrics.counter("ems_db_read_fallbacks", DBConnection::getReadFallbacks);
+        for (int i = 0; i < DBConnection.replicas().size(); i++) {
+            DBConnection.Replica r = DBConnection.replicas().get(i);
+            Metrics.gauge("ems_db_replica" + i + "_healthy", () -> r.isHealthy() ? 1 : 0);
+            Metrics.gauge("ems_db_replica" + i + "_active", r.getPool()::getActive);
+            Metrics.counter("ems_db_replica" + i + "_reads", r::getReads);
+        }
+        if (writes != null) {
+            Metrics.gauge("ems_write_queue_depth", writes::getQueueDepth);
+            Metrics.counter("ems_write_batches", writes::getBatches);
+            Metrics.counter("ems_write_rows", writes::getRows);
+            Metrics.counter("ems_write_rejected", writes::getRejected);
+        }
     }
 
     // ----- Add Event Handler (matches your events table) -----
     static class AddEventHandler implements HttpHandler {
         public void handle(HttpExchange exchange) throws IOException {
             if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-                exchange.sendResponseHeaders(405, 0);
-                exchange.getResponseBody().write("Method Not Allowed".getBytes());
-                exchange.close();
+                Responses.methodNotAllowed(exchange, "POST");
                 return;
             }
 
-            // ensure driver available
-            try { Class.forName("com.mysql.cj.jdbc.Driver"); } catch (Exception ignored) {}
-
-            // Read form body
-            InputStream is = exchange.getRequestBody();
-            String body = new String(is.readAllBytes());
-            String[] pairs = body.split("&");
-
-            String event_name = "", event_date = "", venue = "", registration_fee = "", registration_closes_on = "", max_participants = "";
-
-            for (String pair : pairs) {
-                String[] kv = pair.split("=", 2);
-                String key = kv[0];
-                String value = kv.length > 1 ? java.net.URLDecoder.decode(kv[1], "UTF-8") : "";
-                switch (key) {
-                    case "event_name": event_name = value; break;
-                    case "event_date": event_date = value; break;
-                    case "venue": venue = value; break;
-                    case "registration_fee": registration_fee = value; break;
-                    case "registration_closes_on": registration_closes_on = value; break;
-                    case "max_participants": max_participants = value; break;
-                }
+            // only admins may add events; role comes from the session, no DB lookup
+            SessionStore.Session session = sessions.find(exchange);
+            if (session == null) {
+                Responses.redirect(exchange, "/login");
+                return;
+            }
+            if (!session.isAdmin()) {
+                Responses.text(exchange, 403, "Forbidden");
+                return;
             }
 
-            // Basic validation (reg_fee required as you requested)
-            if (event_name.isEmpty() || event_date.isEmpty() || venue.isEmpty() ||
-                registration_fee.isEmpty() || registration_closes_on.isEmpty() || max_participants.isEmpty()) {
-                String resp = "Missing required fields";
-                exchange.sendResponseHeaders(400, resp.length());
-                exchange.getResponseBody().write(resp.getBytes());
-                exchange.close();
+            // Read and validate form body (reg_fee required as you requested)
+            String event_name, venue;
+            java.sql.Date event_date, registration_closes_on;
+            double registration_fee;
+            int max_participants;
+            try {
+                FormData form = FormData.read(exchange.getRequestBody());
+                event_name = form.require("event_name");
+                // event_date and reg_close_date are DATE in DB; input is YYYY-MM-DD from <input type="date">
+                event_date = form.getDate("event_date");
+                venue = form.require("venue");
+                registration_fee = form.getDouble("registration_fee");
+                registration_closes_on = form.getDate("registration_closes_on");
+                max_participants = form.getInt("max_participants");
+                // same rules as BulkImport.validate, so a row the import rejects is rejected here too
+                if (registration_fee < 0 || Double.isNaN(registration_fee) || Double.isInfinite(registration_fee)) {
+                    throw new IllegalArgumentException("registration_fee must not be negative");
+                }
+                if (registration_closes_on.after(event_date)) {
+                    throw new IllegalArgumentException("registration_closes_on is after event_date");
+                }
+                if (max_participants < 0) throw new IllegalArgumentException("max_participants must not be negative");
+            } catch (IOException | IllegalArgumentException e) {
+                rejectForm(exchange, e);
                 return;
             }
 
             // Insert into DB using proper types
+            session.markWrite();
             try (Connection con = DBConnection.getConnection()) {
                 String sql = "INSERT INTO events (event_name, event_date, venue, reg_fee, reg_close_date, max_participants) VALUES (?,?,?,?,?,?)";
-                PreparedStatement ps = con.prepareStatement(sql);
+                PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
 
                 ps.setString(1, event_name);
-                // event_date and reg_close_date are DATE in DB; input is YYYY-MM-DD from <input type="date">
-                ps.setDate(2, java.sql.Date.valueOf(event_date));
+                ps.setDate(2, event_date);
                 ps.setString(3, venue);
-                ps.setDouble(4, Double.parseDouble(registration_fee));
-                ps.setDate(5, java.sql.Date.valueOf(registration_closes_on));
-                ps.setInt(6, Integer.parseInt(max_participants));
+                ps.setDouble(4, registration_fee);
+                ps.setDate(5, registration_closes_on);
+                ps.setInt(6, max_participants);
 
                 ps.executeUpdate();
+
+                // write-through so /events-data picks up the new row without a reload
+                ResultSet keys = ps.getGeneratedKeys();
+                if (keys.next()) {
+                    catalog.added(new EventCatalog.Event(keys.getInt(1), event_name, event_date.toString(), venue,
+                            registration_fee, registration_closes_on.toString(), max_participants));
+                } else {
+                    catalog.invalidate();
+                }
             } catch (Exception e) {
-                e.printStackTrace();
-                String response = "Error: " + e.getMessage();
-                exchange.sendResponseHeaders(500, response.length());
-                exchange.getResponseBody().write(response.getBytes());
-                exchange.close();
+                Responses.serverError(exchange, e);
                 return;
             }
 
             // Redirect back to admin page with success flag (so JS can show alert)
-            exchange.getResponseHeaders().add("Location", "/admin.html?success=1");
-            exchange.sendResponseHeaders(302, -1);
-            exchange.close();
+            Responses.redirect(exchange, "/admin.html?success=1");
         }
     }
 
-    // Inside Main.java
+    // ----- Event search (in-memory EventIndex, no database round trip) -----
+    /**
+     * GET /events/search?q=hack&from=2025-01-01&to=2025-06-30&min_fee=0&max_fee=100&open=1&limit=20
+     * All parameters are optional; q matches word prefixes of event_name and venue. Pages
+     * continue with after_date / after_id from "next", as on /events-data.
+     */
+    static class SearchHandler implements HttpHandler {
+        private static final int MAX_LIMIT = 500;
+
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                Responses.methodNotAllowed(exchange, "GET");
+                return;
+            }
+            FormData form = FormData.parseQuery(exchange.getRequestURI().getRawQuery());
+            EventIndex.Query q = new EventIndex.Query();
+            try {
+                q.text = form.get("q");
+                if (form.has("from")) q.fromDate = form.getDate("from").toString();
+                if (form.has("to")) q.toDate = form.getDate("to").toString();
+                if (form.has("min_fee")) q.minFee = form.getDouble("min_fee");
+                if (form.has("max_fee")) q.maxFee = form.getDouble("max_fee");
+                String open = form.get("open", "");
+                if (open.equals("1") || open.equalsIgnoreCase("true")) q.openOn = java.time.LocalDate.now().toString();
+                if (form.has("after_date")) {
+                    q.afterDate = form.getDate("after_date").toString();
+                    q.afterId = form.getInt("after_id", 0);
+                }
+                q.limit = Math.min(MAX_LIMIT, form.getInt("limit", 50));
+                if (q.limit <= 0) throw new IllegalArgumentException("limit must be positive");
+            } catch (IllegalArgumentException e) {
+                rejectForm(exchange, e);
+                return;
+            }
 
+            java.util.List<EventCatalog.Event> hits;
+            try {
+                hits = catalog.index().search(q);
+            } catch (SQLException e) {
+                Responses.serverError(exchange, e);
+                return;
+            }
 
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(64 + hits.size() * 200);
+            JsonWriter w = JsonWriter.forThread(bos);
+            w.beginObject().name("events").beginArray();
+            for (EventCatalog.Event e : hits) {
+                EventCatalog.writeEvent(w, e, registrations.remaining(e.id));
+            }
+            w.endArray().name("next");
+            if (hits.size() == q.limit) {
+                EventCatalog.Event last = hits.get(hits.size() - 1);
+                w.beginObject().name("after_date").value(last.eventDate).name("after_id").value(last.id).endObject();
+            } else {
+                w.nullValue();
+            }
+            w.endObject();
+            w.flush();
+            Responses.jsonCached(exchange, bos.toByteArray(), null, null);
+        }
+    }
 
-    // Handler to fetch events data as JSON for admin page (no external JSON lib)
+    // Handler to fetch events data as JSON for admin page (served from EventCatalog)
 static class EventsDataHandler implements HttpHandler {
     public void handle(HttpExchange exchange) throws IOException {
-        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
-            exchange.sendResponseHeaders(405, 0);
-            exchange.getResponseBody().write("Method Not Allowed".getBytes());
-            exchange.close();
+        String method = exchange.getRequestMethod();
+        if (!method.equalsIgnoreCase("GET") && !method.equalsIgnoreCase("HEAD")) {
+            Responses.methodNotAllowed(exchange, "GET, HEAD");
             return;
         }
 
-        StringBuilder sb = new StringBuilder();
-        sb.append("[");
-
-        try (Connection con = DBConnection.getConnection()) {
-            String sql = "SELECT id, event_name, event_date, venue, reg_fee, reg_close_date, max_participants FROM events ORDER BY event_date ASC";
-            PreparedStatement ps = con.prepareStatement(sql);
-            java.sql.ResultSet rs = ps.executeQuery();
-
-            boolean first = true;
-            while (rs.next()) {
-                if (!first) sb.append(",");
-                sb.append("{");
-
-                sb.append("\"id\":").append(rs.getInt("id")).append(",");
-                sb.append("\"event_name\":\"").append(escapeJson(rs.getString("event_name"))).append("\",");
-                sb.append("\"event_date\":\"").append(rs.getDate("event_date") != null ? rs.getDate("event_date").toString() : "").append("\",");
-                sb.append("\"venue\":\"").append(escapeJson(rs.getString("venue"))).append("\",");
-                sb.append("\"reg_fee\":").append(rs.getDouble("reg_fee")).append(",");
-                sb.append("\"reg_close_date\":\"").append(rs.getDate("reg_close_date") != null ? rs.getDate("reg_close_date").toString() : "").append("\",");
-                sb.append("\"max_participants\":").append(rs.getInt("max_participants"));
-
-                sb.append("}");
-                first = false;
+        // paging / projection requests stream straight from the database
+        FormData query = FormData.parseQuery(exchange.getRequestURI().getRawQuery());
+        if (query.has("limit") || query.has("after_date") || query.has("fields")) {
+            // a page has no length or ETag until it is streamed, so there are no headers to answer HEAD with
+            if (method.equalsIgnoreCase("HEAD")) {
+                Responses.methodNotAllowed(exchange, "GET");
+                return;
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            String response = "Error: " + e.getMessage();
-            exchange.sendResponseHeaders(500, response.length());
-            exchange.getResponseBody().write(response.getBytes());
-            exchange.close();
+            streamPage(exchange, query);
             return;
         }
 
-        sb.append("]");
+        EventCatalog.Snapshot snap;
+        try {
+            snap = catalog.get();
+        } catch (Exception e) {
+            Responses.serverError(exchange, e);
+            return;
+        }
 
-        byte[] out = sb.toString().getBytes();
-        exchange.getResponseHeaders().add("Content-Type", "application/json");
-        exchange.sendResponseHeaders(200, out.length);
-        exchange.getResponseBody().write(out);
-        exchange.getResponseBody().close();
+        // the snapshot keeps its gzipped form, so repeat requests do not compress again
+        Responses.jsonCached(exchange, snap.json,
+                snap.etag, snap.json.length >= Responses.GZIP_MIN_BYTES && Responses.acceptsGzip(exchange) ? snap.gzipped() : null);
     }
 
-    // minimal JSON escaper for strings
-    private String escapeJson(String s) {
-        if (s == null) return "";
-        StringBuilder b = new StringBuilder();
-        for (char c : s.toCharArray()) {
-            switch (c) {
-                case '\\': b.append("\\\\"); break;
-                case '"': b.append("\\\""); break;
-                case '\b': b.append("\\b"); break;
-                case '\f': b.append("\\f"); break;
-                case '\n': b.append("\\n"); break;
-                case '\r': b.append("\\r"); break;
-                case '\t': b.append("\\t"); break;
-                default:
-                    if (c < 0x20) {
-                        b.append(String.format("\\u%04x", (int)c));
-                    } else {
-                        b.append(c);
+    private static final java.util.List<String> ALL_FIELDS = java.util.Arrays.asList(
+            "id", "event_name", "event_date", "venue", "reg_fee", "reg_close_date", "max_participants", "seats_remaining");
+    private static final int MAX_PAGE = 1000;
+
+    /**
+     * Keyset page: GET /events-data?after_date=2025-01-01&after_id=7&limit=50&fields=id,event_name
+     * Rows are written from the ResultSet into a chunked response as they arrive.
+     * Body: {"events":[...],"next":{"after_date":"...","after_id":N}} (next is null on the last page).
+     */
+    private void streamPage(HttpExchange exchange, FormData query) throws IOException {
+        java.util.List<String> fields = ALL_FIELDS;
+        int limit;
+        java.sql.Date afterDate = null;
+        int afterId = 0;
+        try {
+            if (query.has("fields")) {
+                fields = new java.util.ArrayList<>();
+                for (String f : query.get("fields").split(",")) {
+                    if (!ALL_FIELDS.contains(f)) throw new IllegalArgumentException("Unknown field: " + f);
+                    fields.add(f);
+                }
+            }
+            limit = Math.min(MAX_PAGE, query.getInt("limit", 100));
+            if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+            if (query.has("after_date")) {
+                afterDate = query.getDate("after_date");
+                afterId = query.getInt("after_id", 0);
+            }
+        } catch (IllegalArgumentException e) {
+            Responses.text(exchange, 400, "Bad request: " + e.getMessage());
+            return;
+        }
+
+        String sql = "SELECT id, event_name, event_date, venue, reg_fee, reg_close_date, max_participants FROM events"
+                + (afterDate != null ? " WHERE event_date > ? OR (event_date = ? AND id > ?)" : "")
+                + " ORDER BY event_date ASC, id ASC LIMIT ?";
+
+        try (Connection con = DBConnection.getReadConnection(sessions.find(exchange))) {
+            PreparedStatement ps = con.prepareStatement(sql);
+            int i = 1;
+            if (afterDate != null) {
+                ps.setDate(i++, afterDate);
+                ps.setDate(i++, afterDate);
+                ps.setInt(i++, afterId);
+            }
+            ps.setInt(i, limit);
+            ps.setFetchSize(Math.min(limit, 200));
+            ResultSet rs = ps.executeQuery();
+
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            JsonWriter w = JsonWriter.forThread(exchange.getResponseBody());
+            w.beginObject().name("events").beginArray();
+            int rows = 0;
+            java.sql.Date lastDate = null;
+            int lastId = 0;
+            while (rs.next()) {
+                lastDate = rs.getDate("event_date");
+                lastId = rs.getInt("id");
+                w.beginObject();
+                for (String f : fields) {
+                    if (f.equals("seats_remaining")) {
+                        // from the in-memory counters, not a per-row COUNT
+                        EventCatalog.writeSeatsRemaining(w, registrations.remaining(lastId), rs.getInt("max_participants"));
+                        continue;
+                    }
+                    w.name(f);
+                    switch (f) {
+                        case "id": w.value(lastId); break;
+                        case "event_date": w.value(lastDate != null ? lastDate.toString() : ""); break;
+                        case "reg_close_date": {
+                            java.sql.Date d = rs.getDate(f);
+                            w.value(d != null ? d.toString() : "");
+                            break;
+                        }
+                        case "reg_fee": w.value(rs.getDouble(f)); break;
+                        case "max_participants": w.value(rs.getInt(f)); break;
+                        default: {
+                            String v = rs.getString(f);
+                            w.value(v != null ? v : "");
+                        }
                     }
+                }
+                w.endObject();
+                rows++;
+            }
+            w.endArray().name("next");
+            if (rows == limit && lastDate != null) {
+                w.beginObject().name("after_date").value(lastDate.toString()).name("after_id").value(lastId).endObject();
+            } else {
+                w.nullValue();
+            }
+            w.endObject();
+            w.flush();
+        } catch (java.sql.SQLException e) {
+            Metrics.error("/events-data", e);
+            // headers may already be out; dropping the connection is the only way to signal failure then
+            if (exchange.getResponseCode() == -1) {
+                Responses.text(exchange, 500, "Error: " + e.getMessage());
             }
+        } finally {
+            exchange.close();
         }
-        return b.toString();
     }
 }
 
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) System.setProperty(key, value);
+    }
+
+    // 413 for oversized bodies, 400 for missing/invalid fields or a broken body
+    static void rejectForm(HttpExchange exchange, Exception e) throws IOException {
+        int status = e instanceof FormData.TooLargeException ? 413 : 400;
+        Responses.text(exchange, status, "Bad request: " + e.getMessage());
+    }
+
 // ----- Register Event Handler -----
 static class RegisterHandler implements HttpHandler {
     public void handle(HttpExchange exchange) throws IOException {
         if (!exchange.getRequestMethod().equalsIgnoreCase("POST")) {
-            exchange.sendResponseHeaders(405, 0);
-            exchange.getResponseBody().write("Method Not Allowed".getBytes());
-            exchange.close();
+            Responses.methodNotAllowed(exchange, "POST");
             return;
         }
 
-        // Read form body
-        InputStream is = exchange.getRequestBody();
-        String body = new String(is.readAllBytes());
-        String[] pairs = body.split("&");
-
-        String eventId = null;
-        for (String pair : pairs) {
-            String[] kv = pair.split("=", 2);
-            if (kv.length > 1 && kv[0].equals("event_id")) {
-                eventId = java.net.URLDecoder.decode(kv[1], "UTF-8");
-            }
+        SessionStore.Session session = sessions.find(exchange);
+        if (session == null) {
+            Responses.text(exchange, 401, "Please login first");
+            return;
         }
 
-        if (eventId == null || eventId.isEmpty()) {
-            String resp = "Missing event_id";
-            exchange.sendResponseHeaders(400, resp.length());
-            exchange.getResponseBody().write(resp.getBytes());
-            exchange.close();
+        // Read form body
+        int eventId;
+        try {
+            eventId = FormData.read(exchange.getRequestBody()).getInt("event_id");
+        } catch (IOException | IllegalArgumentException e) {
+            rejectForm(exchange, e);
             return;
         }
 
-        try { Class.forName("com.mysql.cj.jdbc.Driver"); } catch (Exception ignored) {}
-
-        try (Connection con = DBConnection.getConnection()) {
-            // Check event exists
-            PreparedStatement checkEvent = con.prepareStatement("SELECT event_name, event_date FROM events WHERE id=?");
-            checkEvent.setInt(1, Integer.parseInt(eventId));
-            ResultSet rs = checkEvent.executeQuery();
-
-            if (!rs.next()) {
-                String resp = "Event not found";
-                exchange.sendResponseHeaders(404, resp.length());
-                exchange.getResponseBody().write(resp.getBytes());
-                exchange.close();
-                return;
-            }
-
-            String eventName = rs.getString("event_name");
-            String eventDate = rs.getString("event_date");
-
-            // Hardcoded user_name for demo (you can replace with logged-in user)
-            String userName = (loggedInUser != null) ? loggedInUser : "Guest";
-
-            // Check if already registered
-            PreparedStatement checkReg = con.prepareStatement(
-                "SELECT id FROM registrations WHERE event_id=? AND user_name=?");
-            checkReg.setInt(1, Integer.parseInt(eventId));
-            checkReg.setString(2, userName);
-            ResultSet rs2 = checkReg.executeQuery();
-
-            if (rs2.next()) {
-                String resp = "Already registered";
-                exchange.sendResponseHeaders(409, resp.length());
-                exchange.getResponseBody().write(resp.getBytes());
-                exchange.close();
-                return;
+        try {
+            // capacity + duplicate check + insert in one atomic step
+            session.markWrite();
+            RegistrationEngine.Result result = registrations.register(eventId, session.name);
+
+            int status;
+            String resp;
+            switch (result) {
+                case REGISTERED: status = 200; resp = "Registered successfully!"; break;
+                // do not ask for a retry: the queued insert may still commit
+                case PENDING: status = 202; resp = "Registration received, refresh in a moment to see it"; break;
+                case DUPLICATE: status = 409; resp = "Already registered"; break;
+                case FULL: status = 409; resp = "Event is full"; break;
+                default: status = 404; resp = "Event not found"; break;
             }
-
-            // Insert registration
-            PreparedStatement insert = con.prepareStatement(
-                "INSERT INTO registrations (event_id, event_name, event_date, user_name) VALUES (?,?,?,?)");
-            insert.setInt(1, Integer.parseInt(eventId));
-            insert.setString(2, eventName);
-            insert.setString(3, eventDate);
-            insert.setString(4, userName);
-            insert.executeUpdate();
-
-            String resp = "Registered successfully!";
-            exchange.sendResponseHeaders(200, resp.length());
-            exchange.getResponseBody().write(resp.getBytes());
+            Responses.text(exchange, status, resp);
+        } catch (SQLTransientException e) {
+            // write queue full: ask the client to retry instead of failing hard
+            Responses.busy(exchange, "Server busy, try again");
         } catch (Exception e) {
-            e.printStackTrace();
-            String resp = "Database error: " + e.getMessage();
-            exchange.sendResponseHeaders(500, resp.length());
-            exchange.getResponseBody().write(resp.getBytes());
-        } finally {
-            exchange.close();
+            Metrics.error("/register", e);
+            Responses.text(exchange, 500, "Database error: " + e.getMessage());
         }
     }
 }
@@ -287,115 +478,121 @@ static class RegisterHandler implements HttpHandler {
 
             if (method.equalsIgnoreCase("GET")) {
                 // Serve login page
-                File file = new File(System.getProperty("user.dir") + "/public/login.html");
-                if (!file.exists()) {
-                    String notFound = "login.html not found in /public";
-                    exchange.sendResponseHeaders(404, notFound.length());
-                    exchange.getResponseBody().write(notFound.getBytes());
-                    exchange.close();
-                    return;
+                if (!assets.serve(exchange, "/login.html")) {
+                    Responses.text(exchange, 404, "login.html not found in /public");
                 }
-
-                byte[] bytes = Files.readAllBytes(file.toPath());
-                exchange.getResponseHeaders().add("Content-Type", "text/html");
-                exchange.sendResponseHeaders(200, bytes.length);
-                exchange.getResponseBody().write(bytes);
-                exchange.getResponseBody().close();
                 return;
             } else if (method.equalsIgnoreCase("POST")) {
                 // Read form data
-                InputStream is = exchange.getRequestBody();
-                String body = new String(is.readAllBytes());
-                String[] pairs = body.split("&");
-
-                String email = "", password = "";
-
-                for (String pair : pairs) {
-                    String[] kv = pair.split("=", 2);
-                    String key = kv[0];
-                    String value = kv.length > 1 ? java.net.URLDecoder.decode(kv[1], "UTF-8") : "";
-                    if (key.equals("email")) email = value;
-                    if (key.equals("password")) password = value;
+                String email, password;
+                try {
+                    FormData form = FormData.read(exchange.getRequestBody());
+                    email = form.get("email", "");
+                    password = form.get("password", "");
+                } catch (IOException e) {
+                    rejectForm(exchange, e);
+                    return;
                 }
 
+                // Verify user: cached credentials first, DB only on a miss
                 try {
-                    Class.forName("com.mysql.cj.jdbc.Driver");
-                } catch (Exception ignored) {}
-
-                // Verify user in DB
-                try (Connection con = DBConnection.getConnection()) {
-                    String sql = "SELECT name, role FROM users WHERE email=? AND password=?";
-                    PreparedStatement ps = con.prepareStatement(sql);
-                    ps.setString(1, email);
-                    ps.setString(2, password);
-                    ResultSet rs = ps.executeQuery();
-
-                    if (rs.next()) {
-
-                        loggedInUser = rs.getString("name");
-
-                        String role = rs.getString("role");
-                        if ("admin".equalsIgnoreCase(role)) {
-                            exchange.getResponseHeaders().add("Location", "/admin.html");
-                            exchange.sendResponseHeaders(302, -1);
-                        } else {
-                            exchange.getResponseHeaders().add("Location", "/events.html");
-                            exchange.sendResponseHeaders(302, -1);
+                    CredentialCache.Credentials creds = credentials.get(email);
+                    if (creds == null) {
+                        creds = loadCredentials(email);
+                        if (creds != null) credentials.put(email, creds);
+                    }
+
+                    if (creds != null && passwords.verify(password, creds.password)) {
+
+                        if (passwords.needsRehash(creds.password)) {
+                            creds = upgradeHash(email, password, creds);
                         }
-                        exchange.close();
+
+                        String role = creds.role;
+                        SessionStore.Session session = sessions.create(creds.name, email, role);
+                        exchange.getResponseHeaders().add("Set-Cookie", sessions.cookieHeader(session));
+
+                        Responses.redirect(exchange, "admin".equalsIgnoreCase(role) ? "/admin.html" : "/events.html");
                         return;
                     } else {
                         // invalid login -> return login with JS alert and link back
-                        String response = "<script>alert('Invalid email or password'); window.location='/login';</script>";
-                        byte[] out = response.getBytes();
-                        exchange.getResponseHeaders().add("Content-Type", "text/html");
-                        exchange.sendResponseHeaders(200, out.length);
-                        exchange.getResponseBody().write(out);
-                        exchange.getResponseBody().close();
+                        Responses.html(exchange, 200,
+                                "<script>alert('Invalid email or password'); window.location='/login';</script>");
                         return;
                     }
+                } catch (RejectedExecutionException e) {
+                    // hashing pool saturated
+                    Responses.busy(exchange, "Server busy, try again");
+                    return;
                 } catch (Exception e) {
-                    e.printStackTrace();
-                    String response = "Error: " + e.getMessage();
-                    exchange.sendResponseHeaders(500, response.length());
-                    exchange.getResponseBody().write(response.getBytes());
-                    exchange.close();
+                    Responses.serverError(exchange, e);
                     return;
                 }
             } else {
-                exchange.sendResponseHeaders(405, 0);
-                exchange.getResponseBody().write("Method Not Allowed".getBytes());
-                exchange.close();
+                Responses.methodNotAllowed(exchange, "GET, POST");
+            }
+        }
+
+        private static CredentialCache.Credentials loadCredentials(String email) throws SQLException {
+            CredentialCache.Credentials creds = loadCredentials(email, false);
+            // a user who just signed up may not have reached the replica yet
+            return creds != null || DBConnection.replicas().isEmpty() ? creds : loadCredentials(email, true);
+        }
+
+        private static CredentialCache.Credentials loadCredentials(String email, boolean primary) throws SQLException {
+            try (Connection con = DBConnection.getReadConnection(primary)) {
+                PreparedStatement ps = con.prepareStatement("SELECT name, role, password FROM users WHERE email=?");
+                ps.setString(1, email);
+                ResultSet rs = ps.executeQuery();
+                if (!rs.next()) return null;
+                return new CredentialCache.Credentials(rs.getString("name"), rs.getString("role"), rs.getString("password"));
+            }
+        }
+
+        // plaintext or weaker hash: store a fresh hash now that we know the password
+        private static CredentialCache.Credentials upgradeHash(String email, String password,
+                                                               CredentialCache.Credentials creds) {
+            String hashed = passwords.hash(password);
+            try (Connection con = DBConnection.getConnection()) {
+                PreparedStatement ps = con.prepareStatement("UPDATE users SET password=? WHERE email=?");
+                ps.setString(1, hashed);
+                ps.setString(2, email);
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                // login still succeeds; the upgrade is retried next time
+                Metrics.error("/login.upgradeHash", e);
+                return creds;
             }
+            CredentialCache.Credentials upgraded = new CredentialCache.Credentials(creds.name, creds.role, hashed);
+            credentials.put(email, upgraded);
+            return upgraded;
         }
     }
 
-    // ----- Static file serving (absolute path, safe even if folder name contains spaces) -----
-    static class StaticHandler implements HttpHandler {
+    // ----- Logout Handler (drops the session and clears the cookie) -----
+    static class LogoutHandler implements HttpHandler {
         public void handle(HttpExchange exchange) throws IOException {
-            String path = exchange.getRequestURI().getPath();
-            if (path.equals("/")) path = "/index.html";
+            sessions.remove(exchange);
+            exchange.getResponseHeaders().add("Set-Cookie", SessionStore.expiredCookieHeader());
+            Responses.redirect(exchange, "/login");
+        }
+    }
 
-            File file = new File(System.getProperty("user.dir") + "/public" + path);
-            if (!file.exists()) {
-                exchange.sendResponseHeaders(404, 0);
-                exchange.getResponseBody().write("404 Not Found".getBytes());
-                exchange.getResponseBody().close();
+    // ----- Static file serving (cached in memory by StaticAssets, paths can't leave /public) -----
+    static class StaticHandler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            if (!method.equalsIgnoreCase("GET") && !method.equalsIgnoreCase("HEAD")) {
+                Responses.methodNotAllowed(exchange, "GET, HEAD");
                 return;
             }
 
-            byte[] bytes = Files.readAllBytes(file.toPath());
-            exchange.getResponseHeaders().add("Content-Type", getContentType(file.getName()));
-            exchange.sendResponseHeaders(200, bytes.length);
-            exchange.getResponseBody().write(bytes);
-            exchange.getResponseBody().close();
-        }
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/")) path = "/index.html";
 
-        private String getContentType(String filename) {
-            if (filename.endsWith(".html")) return "text/html";
-            if (filename.endsWith(".css")) return "text/css";
-            if (filename.endsWith(".js")) return "application/javascript";
-            return "application/octet-stream";
+            if (!assets.serve(exchange, path)) {
+                Responses.text(exchange, 404, "404 Not Found");
+            }
         }
     }
 
@@ -406,81 +603,71 @@ static class RegisterHandler implements HttpHandler {
             String method = exchange.getRequestMethod();
 
             if (method.equalsIgnoreCase("GET")) {
-                File file = new File(System.getProperty("user.dir") + "/public/signup.html");
-                if (!file.exists()) {
-                    String notFound = "signup.html not found in /public";
-                    exchange.sendResponseHeaders(404, notFound.length());
-                    exchange.getResponseBody().write(notFound.getBytes());
-                    exchange.close();
-                    return;
+                if (!assets.serve(exchange, "/signup.html")) {
+                    Responses.text(exchange, 404, "signup.html not found in /public");
                 }
-
-                byte[] bytes = Files.readAllBytes(file.toPath());
-                exchange.getResponseHeaders().add("Content-Type", "text/html");
-                exchange.sendResponseHeaders(200, bytes.length);
-                exchange.getResponseBody().write(bytes);
-                exchange.getResponseBody().close();
                 return;
             }
 
             if (method.equalsIgnoreCase("POST")) {
                 // Read submitted form data
-                InputStream is = exchange.getRequestBody();
-                String body = new String(is.readAllBytes());
-                String[] pairs = body.split("&");
-
-                String name="", roll_no="", email="", phone_number="", department="", year="", password="";
-
-                for (String pair : pairs) {
-                    String[] kv = pair.split("=", 2);
-                    String key = kv[0];
-                    String value = kv.length > 1 ? java.net.URLDecoder.decode(kv[1], "UTF-8") : "";
-
-                    switch (key) {
-                        case "name": name = value; break;
-                        case "roll_no": roll_no = value; break;
-                        case "email": email = value; break;
-                        case "phone_number": phone_number = value; break;
-                        case "department": department = value; break;
-                        case "year": year = value; break;
-                        case "password": password = value; break;
-                    }
+                String name, roll_no, email, phone_number, department, year, password;
+                try {
+                    FormData form = FormData.read(exchange.getRequestBody());
+                    name = form.get("name", "");
+                    roll_no = form.get("roll_no", "");
+                    email = form.get("email", "");
+                    phone_number = form.get("phone_number", "");
+                    department = form.get("department", "");
+                    year = form.get("year", "");
+                    password = form.get("password", "");
+                } catch (IOException e) {
+                    rejectForm(exchange, e);
+                    return;
                 }
 
-                try { Class.forName("com.mysql.cj.jdbc.Driver"); } catch (Exception ignored) {}
-
-                // Insert into DB
-                try (Connection con = DBConnection.getConnection()) {
-                    String sql = "INSERT INTO users (name, roll_no, email, phone_number, department, year, password) VALUES (?,?,?,?,?,?,?)";
-                    PreparedStatement ps = con.prepareStatement(sql);
-                    ps.setString(1, name);
-                    ps.setString(2, roll_no);
-                    ps.setString(3, email);
-                    ps.setString(4, phone_number);
-                    ps.setString(5, department);
-                    ps.setString(6, year);
-                    ps.setString(7, password);
-                    ps.executeUpdate();
+                // Insert into DB (group-committed when the write-behind queue is on)
+                String sql = "INSERT INTO users (name, roll_no, email, phone_number, department, year, password) VALUES (?,?,?,?,?,?,?)";
+                try {
+                    // never store the plaintext
+                    password = passwords.hash(password);
+
+                    if (writes != null) {
+                        try {
+                            writes.executeUncounted(sql, name, roll_no, email, phone_number, department, year, password);
+                        } catch (WriteBehindQueue.PendingWriteException pending) {
+                            // the insert is still being committed; a retry would only hit the duplicate email
+                        }
+                    } else {
+                        try (Connection con = DBConnection.getConnection()) {
+                            PreparedStatement ps = con.prepareStatement(sql);
+                            ps.setString(1, name);
+                            ps.setString(2, roll_no);
+                            ps.setString(3, email);
+                            ps.setString(4, phone_number);
+                            ps.setString(5, department);
+                            ps.setString(6, year);
+                            ps.setString(7, password);
+                            ps.executeUpdate();
+                        }
+                    }
+                } catch (SQLTransientException | RejectedExecutionException e) {
+                    Responses.busy(exchange, "Server busy, try again");
+                    return;
                 } catch (Exception e) {
-                    e.printStackTrace();
-                    String response = "Error: " + e.getMessage();
-                    exchange.sendResponseHeaders(500, response.length());
-                    exchange.getResponseBody().write(response.getBytes());
-                    exchange.close();
+                    Responses.serverError(exchange, e);
                     return;
+                } finally {
+                    credentials.invalidate(email);
                 }
 
                 // Redirect to login (use /login context)
-                exchange.getResponseHeaders().add("Location", "/login");
-                exchange.sendResponseHeaders(302, -1);
-                exchange.close();
+                Responses.redirect(exchange, "/login");
                 return;
             }
 
             // Any other method -> 405
-            exchange.sendResponseHeaders(405, 0);
-            exchange.getResponseBody().write("Method Not Allowed".getBytes());
-            exchange.close();
+            Responses.methodNotAllowed(exchange, "GET, POST");
         }
     }
 }
@@ -0,0 +1,420 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * In-memory stand-in for the events / registrations / users tables, so harnesses
+ * (RegistrationStress, Bench) can drive the real handlers and pools without MySQL:
+ *
+ *   -Ddb.driver=MemoryDatabase -Ddb.url=jdbc:memory:
+ *
+ * Only the statements this code base issues are understood, recognised by their SQL
+ * text; anything else fails with SQLFeatureNotSupportedException. Every statement runs
+ * under one lock, so each is atomic the way the conditional registration INSERT is in
+ * MySQL. Transactions are only modelled far enough for rollback(): writes are visible
+ * to other connections at once (no isolation) and are undone on rollback.
+ * memory.latencyMicros adds a round trip before every statement so races in the
+ * callers get room to happen; memory.batchNoInfo=true makes executeBatch report
+ * SUCCESS_NO_INFO like a driver that rewrites batches.
+ */
+public final class MemoryDatabase implements Driver {
+
+    private static final long LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(Long.getLong("memory.latencyMicros", 0));
+    private static volatile boolean batchNoInfo = Boolean.getBoolean("memory.batchNoInfo");
+
+    static {
+        try {
+            DriverManager.registerDriver(new MemoryDatabase());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // ----- Tables -----
+
+    private static final Object LOCK = new Object();
+    private static final List<Object[]> EVENTS = new ArrayList<>();         // id, name, date, venue, fee, closes, max
+    private static final List<Object[]> REGISTRATIONS = new ArrayList<>();  // event_id, event_name, event_date, user_name
+    private static final Map<String, Object[]> USERS = new HashMap<>();     // email -> name, role, password
+    // the unique (event_id, user_name) key of registrations, also used for counts
+    private static final Map<Integer, Set<String>> REGISTERED = new HashMap<>();
+    private static int nextEventId = 1;
+
+    private static final AtomicLong statements = new AtomicLong();
+    private static final AtomicLong rejectedRegistrations = new AtomicLong();
+
+    /** Empties every table. */
+    public static void reset() {
+        synchronized (LOCK) {
+            EVENTS.clear();
+            REGISTRATIONS.clear();
+            USERS.clear();
+            REGISTERED.clear();
+            nextEventId = 1;
+        }
+        statements.set(0);
+        rejectedRegistrations.set(0);
+    }
+
+    public static void setBatchNoInfo(boolean noInfo) {
+        batchNoInfo = noInfo;
+    }
+
+    /** Inserts an event directly and returns its id. */
+    public static int addEvent(String name, String date, int maxParticipants) {
+        synchronized (LOCK) {
+            int id = nextEventId++;
+            EVENTS.add(new Object[] { id, name, date, "Hall " + id % 7, 0.0, date, maxParticipants });
+            return id;
+        }
+    }
+
+    /** Inserts a user directly; the password is stored as given (plaintext or a hash). */
+    public static void addUser(String name, String email, String password, String role) {
+        synchronized (LOCK) {
+            USERS.put(email, new Object[] { name, role, password });
+        }
+    }
+
+    public static int registrations(int eventId) {
+        synchronized (LOCK) {
+            return countRegistrations(eventId);
+        }
+    }
+
+    /** Number of (event, user) pairs that occur more than once. */
+    public static int duplicateRegistrations() {
+        synchronized (LOCK) {
+            Map<String, Integer> seen = new HashMap<>();
+            int dups = 0;
+            for (Object[] r : REGISTRATIONS) {
+                if (seen.merge(r[0] + "/" + r[3], 1, Integer::sum) == 2) dups++;
+            }
+            return dups;
+        }
+    }
+
+    /** Conditional registration INSERTs that matched no row. */
+    public static long getRejectedRegistrations() { return rejectedRegistrations.get(); }
+    public static long getStatements() { return statements.get(); }
+
+    private static int countRegistrations(int eventId) {
+        Set<String> users = REGISTERED.get(eventId);
+        return users != null ? users.size() : 0;
+    }
+
+    private static boolean isRegistered(int eventId, Object user) {
+        Set<String> users = REGISTERED.get(eventId);
+        return users != null && users.contains(user);
+    }
+
+    private static Object[] event(int id) {
+        for (Object[] e : EVENTS) {
+            if ((Integer) e[0] == id) return e;
+        }
+        return null;
+    }
+
+    // ----- Statements -----
+
+    private static final String[] EVENT_COLUMNS =
+            { "id", "event_name", "event_date", "venue", "reg_fee", "reg_close_date", "max_participants" };
+
+    /** Runs one statement; returns a ResultSet for queries, else an int[] {updateCount, generatedKey}. */
+    private static Object run(String sql, Object[] p, List<Runnable> undo) throws SQLException {
+        statements.incrementAndGet();
+        if (LATENCY_NANOS > 0) LockSupport.parkNanos(LATENCY_NANOS);
+        synchronized (LOCK) {
+            if (sql.equals(RegistrationEngine.INSERT_IF_ALLOWED)) {
+                String user = (String) p[1];
+                Object[] e = event(toInt(p[2]));
+                boolean ok = e != null && !isRegistered((Integer) e[0], user);
+                int max = ok ? (Integer) e[6] : 0;
+                if (ok && max > 0 && countRegistrations((Integer) e[0]) >= max) ok = false;
+                if (!ok) {
+                    rejectedRegistrations.incrementAndGet();
+                    return new int[] { 0, 0 };
+                }
+                Object[] row = { e[0], e[1], e[2], user };
+                REGISTRATIONS.add(row);
+                REGISTERED.computeIfAbsent((Integer) e[0], k -> new HashSet<>()).add(user);
+                if (undo != null) undo.add(() -> {
+                    REGISTRATIONS.removeIf(r -> r == row);
+                    REGISTERED.get(row[0]).remove(user);
+                });
+                return new int[] { 1, 0 };
+            }
+            if (sql.equals(RegistrationEngine.LOAD_SEATS)) {
+                Object[] e = event(toInt(p[1]));
+                List<Object[]> rows = new ArrayList<>();
+                if (e != null) rows.add(new Object[] { e[6], countRegistrations((Integer) e[0]) });
+                return resultSet(new String[] { "max_participants", "taken" }, rows);
+            }
+            if (sql.equals(RegistrationEngine.COUNT_ALL)) {
+                Map<Integer, Integer> counts = new LinkedHashMap<>();
+                for (Object[] r : REGISTRATIONS) counts.merge((Integer) r[0], 1, Integer::sum);
+                List<Object[]> rows = new ArrayList<>();
+                for (Map.Entry<Integer, Integer> c : counts.entrySet()) rows.add(new Object[] { c.getKey(), c.getValue() });
+                return resultSet(new String[] { "event_id", "taken" }, rows);
+            }
+            if (sql.equals(RegistrationEngine.CHECK_DUPLICATE)) {
+                List<Object[]> rows = new ArrayList<>();
+                if (isRegistered(toInt(p[1]), p[2])) rows.add(new Object[] { 1 });
+                return resultSet(new String[] { "1" }, rows);
+            }
+            if (sql.startsWith("SELECT id, event_name, event_date, venue, reg_fee, reg_close_date, max_participants FROM events")) {
+                return selectEvents(sql, p);
+            }
+            if (sql.startsWith("INSERT INTO events ")) {
+                int id = nextEventId++;
+                Object[] row = { id, p[1], String.valueOf(p[2]), p[3], toDouble(p[4]), String.valueOf(p[5]), toInt(p[6]) };
+                EVENTS.add(row);
+                if (undo != null) undo.add(() -> EVENTS.removeIf(r -> r == row));
+                return new int[] { 1, id };
+            }
+            if (sql.startsWith("INSERT INTO users ")) {
+                String email = (String) p[3];
+                if (USERS.containsKey(email)) {
+                    throw new SQLIntegrityConstraintViolationException("Duplicate entry '" + email + "' for key 'email'", "23000", 1062);
+                }
+                USERS.put(email, new Object[] { p[1], "student", p[7] });
+                if (undo != null) undo.add(() -> USERS.remove(email));
+                return new int[] { 1, 0 };
+            }
+            if (sql.startsWith("SELECT name, role, password FROM users WHERE email")) {
+                Object[] u = USERS.get((String) p[1]);
+                List<Object[]> rows = new ArrayList<>();
+                if (u != null) rows.add(u.clone());
+                return resultSet(new String[] { "name", "role", "password" }, rows);
+            }
+            if (sql.startsWith("UPDATE users SET password")) {
+                Object[] u = USERS.get((String) p[2]);
+                if (u == null) return new int[] { 0, 0 };
+                Object old = u[2];
+                u[2] = p[1];
+                if (undo != null) undo.add(() -> u[2] = old);
+                return new int[] { 1, 0 };
+            }
+        }
+        throw new SQLFeatureNotSupportedException("MemoryDatabase does not understand: " + sql);
+    }
+
+    // events in (event_date, id) order, with the optional keyset WHERE and LIMIT of the paged listing
+    private static ResultSet selectEvents(String sql, Object[] p) {
+        List<Object[]> rows = new ArrayList<>(EVENTS);
+        rows.sort((a, b) -> {
+            int c = ((String) a[2]).compareTo((String) b[2]);
+            return c != 0 ? c : Integer.compare((Integer) a[0], (Integer) b[0]);
+        });
+        int i = 1;
+        if (sql.contains("WHERE event_date > ?")) {
+            String after = String.valueOf(p[i++]);
+            i++;
+            int afterId = toInt(p[i++]);
+            rows.removeIf(r -> {
+                int c = ((String) r[2]).compareTo(after);
+                return c < 0 || c == 0 && (Integer) r[0] <= afterId;
+            });
+        }
+        if (sql.endsWith("LIMIT ?")) {
+            int limit = toInt(p[i]);
+            if (rows.size() > limit) rows = new ArrayList<>(rows.subList(0, limit));
+        }
+        List<Object[]> copies = new ArrayList<>(rows.size());
+        for (Object[] r : rows) copies.add(r.clone());
+        return resultSet(EVENT_COLUMNS, copies);
+    }
+
+    private static int toInt(Object o) {
+        return o instanceof Number ? ((Number) o).intValue() : Integer.parseInt(String.valueOf(o));
+    }
+
+    private static double toDouble(Object o) {
+        return o instanceof Number ? ((Number) o).doubleValue() : Double.parseDouble(String.valueOf(o));
+    }
+
+    // ----- JDBC proxies -----
+
+    private static Connection connection() {
+        boolean[] state = { true, false }; // autoCommit, closed
+        List<Runnable> undo = new ArrayList<>();
+        return proxy(Connection.class, (self, m, a) -> {
+            switch (m.getName()) {
+                case "prepareStatement":
+                    return statement((String) a[0], () -> state[0] ? null : undo);
+                case "setAutoCommit":
+                    if ((Boolean) a[0]) undo.clear(); // switching autocommit on commits
+                    state[0] = (Boolean) a[0];
+                    return null;
+                case "commit": undo.clear(); return null;
+                case "rollback":
+                    synchronized (LOCK) {
+                        for (int i = undo.size() - 1; i >= 0; i--) undo.get(i).run();
+                    }
+                    undo.clear();
+                    return null;
+                case "getAutoCommit": return state[0];
+                case "isValid": return !state[1];
+                case "isClosed": return state[1];
+                case "close": state[1] = true; return null;
+                case "setReadOnly": case "clearWarnings":
+                case "setTransactionIsolation": case "setNetworkTimeout": case "setSchema": case "setCatalog":
+                    return null;
+                case "hashCode": return System.identityHashCode(self);
+                case "equals": return self == a[0];
+                case "toString": return "MemoryDatabase connection";
+                default: throw new SQLFeatureNotSupportedException("Connection." + m.getName());
+            }
+        });
+    }
+
+    // undo: the connection's undo log while a transaction is open, else null
+    private static PreparedStatement statement(String sql, Supplier<List<Runnable>> undo) {
+        Object[][] params = { new Object[16] };
+        List<Object[]> batch = new ArrayList<>();
+        Object[] last = new Object[1]; // last ResultSet or int[] result
+        return proxy(PreparedStatement.class, (self, m, a) -> {
+            String name = m.getName();
+            if (name.startsWith("set") && a != null && a.length >= 2 && a[0] instanceof Integer
+                    && !name.equals("setFetchSize") && !name.equals("setQueryTimeout") && !name.equals("setMaxRows")) {
+                int idx = (Integer) a[0];
+                if (idx >= params[0].length) params[0] = Arrays.copyOf(params[0], idx + 8);
+                params[0][idx] = name.equals("setNull") ? null : a[1];
+                return null;
+            }
+            switch (name) {
+                case "executeQuery":
+                    return last[0] = run(sql, params[0], undo.get());
+                case "executeUpdate": {
+                    int[] r = (int[]) (last[0] = run(sql, params[0], undo.get()));
+                    return r[0];
+                }
+                case "execute":
+                    return (last[0] = run(sql, params[0], undo.get())) instanceof ResultSet;
+                case "addBatch":
+                    batch.add(params[0].clone());
+                    return null;
+                case "executeBatch": {
+                    int[] counts = new int[batch.size()];
+                    for (int i = 0; i < counts.length; i++) {
+                        int n = ((int[]) run(sql, batch.get(i), undo.get()))[0];
+                        counts[i] = batchNoInfo ? Statement.SUCCESS_NO_INFO : n;
+                    }
+                    batch.clear();
+                    return counts;
+                }
+                case "getGeneratedKeys": {
+                    List<Object[]> rows = new ArrayList<>();
+                    if (last[0] instanceof int[] && ((int[]) last[0])[1] > 0) rows.add(new Object[] { ((int[]) last[0])[1] });
+                    return resultSet(new String[] { "GENERATED_KEY" }, rows);
+                }
+                case "getResultSet": return last[0] instanceof ResultSet ? last[0] : null;
+                case "getUpdateCount": return last[0] instanceof int[] ? ((int[]) last[0])[0] : -1;
+                case "clearParameters": Arrays.fill(params[0], null); return null;
+                case "clearBatch": batch.clear(); return null;
+                case "setFetchSize": case "setQueryTimeout": case "setMaxRows": case "close": case "clearWarnings":
+                    return null;
+                case "isClosed": return false;
+                case "hashCode": return System.identityHashCode(self);
+                case "equals": return self == a[0];
+                case "toString": return sql;
+                default: throw new SQLFeatureNotSupportedException("PreparedStatement." + name);
+            }
+        });
+    }
+
+    private static ResultSet resultSet(String[] columns, List<Object[]> rows) {
+        int[] cursor = { -1 };
+        boolean[] wasNull = { false };
+        return proxy(ResultSet.class, (self, m, a) -> {
+            String name = m.getName();
+            switch (name) {
+                case "next": return ++cursor[0] < rows.size();
+                case "close": return null;
+                case "isClosed": return false;
+                case "wasNull": return wasNull[0];
+                case "hashCode": return System.identityHashCode(self);
+                case "equals": return self == a[0];
+                case "toString": return "MemoryDatabase result " + Arrays.toString(columns);
+                default:
+            }
+            if (!name.startsWith("get") || a == null || a.length != 1) {
+                throw new SQLFeatureNotSupportedException("ResultSet." + name);
+            }
+            int col = -1;
+            if (a[0] instanceof Integer) {
+                col = (Integer) a[0] - 1;
+            } else {
+                for (int i = 0; i < columns.length; i++) {
+                    if (columns[i].equalsIgnoreCase((String) a[0])) col = i;
+                }
+            }
+            if (col < 0 || col >= columns.length) throw new SQLException("No column " + a[0]);
+            Object v = rows.get(cursor[0])[col];
+            wasNull[0] = v == null;
+            switch (name) {
+                case "getInt": return v == null ? 0 : toInt(v);
+                case "getLong": return v == null ? 0L : (long) toInt(v);
+                case "getDouble": return v == null ? 0.0 : toDouble(v);
+                case "getString": return v == null ? null : String.valueOf(v);
+                case "getDate": return v == null ? null : java.sql.Date.valueOf(String.valueOf(v));
+                case "getObject": return v;
+                default: throw new SQLFeatureNotSupportedException("ResultSet." + name);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(MemoryDatabase.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    // ----- Driver -----
+
+    @Override
+    public Connection connect(String url, Properties info) {
+        return acceptsURL(url) ? connection() : null;
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith("jdbc:memory:");
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override public int getMajorVersion() { return 1; }
+    @Override public int getMinorVersion() { return 0; }
+    @Override public boolean jdbcCompliant() { return false; }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,168 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Request and JDBC metrics, exposed on /metrics in Prometheus text format.
+ *
+ * Every context registered in Main gets a {@link #filter(String)} that counts requests
+ * by status code and records latency in a {@link LatencyHistogram}. The connection pool
+ * reports the time of every statement execute through {@link #recordJdbc}. All stats
+ * objects are created when a context or JDBC operation is first seen, so recording
+ * itself only touches atomics. Other components publish plain values with
+ * {@link #gauge(String, Supplier)}, or {@link #counter(String, Supplier)} for values
+ * that only ever grow; those are read when /metrics is scraped.
+ *
+ * Handlers report unexpected exceptions through {@link #error(String, Throwable)}, which
+ * logs them with their stack trace and counts them per source in ems_errors_total.
+ */
+public final class Metrics {
+
+    // Prometheus histogram bounds, in seconds
+    private static final double[] BOUNDS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+    static final class Endpoint {
+        final String name;
+        final AtomicLongArray byStatus = new AtomicLongArray(600);
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        Endpoint(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final Map<String, Endpoint> ENDPOINTS = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> JDBC = new ConcurrentHashMap<>();
+    private static final Map<String, Supplier<Number>> GAUGES = new ConcurrentSkipListMap<>();
+    private static final Map<String, Supplier<Number>> COUNTERS = new ConcurrentSkipListMap<>();
+    private static final Map<String, LongAdder> ERRORS = new ConcurrentSkipListMap<>();
+    private static final Logger LOG = Logger.getLogger("ems");
+
+    private Metrics() {
+    }
+
+    // ----- Recording -----
+
+    /** Filter that records count, status and latency for one context. */
+    public static Filter filter(String name) {
+        Endpoint ep = ENDPOINTS.computeIfAbsent(name, Endpoint::new);
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    int status = exchange.getResponseCode();
+                    // -1: the handler threw before sending a response; count it as a 500
+                    ep.byStatus.incrementAndGet(status > 0 && status < 600 ? status : 500);
+                    ep.latency.recordNanos(System.nanoTime() - start);
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Metrics for " + name;
+            }
+        };
+    }
+
+    public static void recordJdbc(String operation, long nanos) {
+        LatencyHistogram h = JDBC.get(operation);
+        if (h == null) h = JDBC.computeIfAbsent(operation, k -> new LatencyHistogram());
+        h.recordNanos(nanos);
+    }
+
+    /** Logs an unexpected exception and counts it under source (a context path or component). */
+    public static void error(String source, Throwable e) {
+        ERRORS.computeIfAbsent(source, k -> new LongAdder()).increment();
+        LOG.log(Level.SEVERE, source + ": " + e, e);
+    }
+
+    /** Registers a value read at scrape time (pool size, queue depth, ...). */
+    public static void gauge(String name, Supplier<Number> value) {
+        GAUGES.put(name, value);
+    }
+
+    /** Registers a monotonic count read at scrape time; exported as name_total, type counter. */
+    public static void counter(String name, Supplier<Number> value) {
+        COUNTERS.put(name.endsWith("_total") ? name : name + "_total", value);
+    }
+
+    // ----- Exposition -----
+
+    /** GET /metrics */
+    public static class Handler implements HttpHandler {
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+                Responses.methodNotAllowed(exchange, "GET");
+                return;
+            }
+            Responses.send(exchange, 200, "text/plain; version=0.0.4; charset=utf-8", render().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    public static String render() {
+        StringBuilder sb = new StringBuilder(8192);
+
+        sb.append("# TYPE ems_http_requests_total counter\n");
+        for (Endpoint ep : ENDPOINTS.values()) {
+            for (int status = 100; status < 600; status++) {
+                long n = ep.byStatus.get(status);
+                if (n > 0) {
+                    sb.append("ems_http_requests_total{context=\"").append(ep.name)
+                      .append("\",status=\"").append(status).append("\"} ").append(n).append('\n');
+                }
+            }
+        }
+
+        sb.append("# TYPE ems_http_request_duration_seconds histogram\n");
+        for (Endpoint ep : ENDPOINTS.values()) {
+            histogram(sb, "ems_http_request_duration_seconds", "context", ep.name, ep.latency);
+        }
+
+        sb.append("# TYPE ems_jdbc_duration_seconds histogram\n");
+        for (Map.Entry<String, LatencyHistogram> e : JDBC.entrySet()) {
+            histogram(sb, "ems_jdbc_duration_seconds", "operation", e.getKey(), e.getValue());
+        }
+
+        sb.append("# TYPE ems_errors_total counter\n");
+        for (Map.Entry<String, LongAdder> e : ERRORS.entrySet()) {
+            sb.append("ems_errors_total{source=\"").append(e.getKey()).append("\"} ").append(e.getValue().sum()).append('\n');
+        }
+
+        for (Map.Entry<String, Supplier<Number>> c : COUNTERS.entrySet()) {
+            sb.append("# TYPE ").append(c.getKey()).append(" counter\n");
+            sb.append(c.getKey()).append(' ').append(c.getValue().get()).append('\n');
+        }
+
+        for (Map.Entry<String, Supplier<Number>> g : GAUGES.entrySet()) {
+            sb.append("# TYPE ").append(g.getKey()).append(" gauge\n");
+            sb.append(g.getKey()).append(' ').append(g.getValue().get()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void histogram(StringBuilder sb, String metric, String label, String value, LatencyHistogram h) {
+        String labels = label + "=\"" + value + "\"";
+        for (double bound : BOUNDS) {
+            sb.append(metric).append("_bucket{").append(labels).append(",le=\"").append(bound).append("\"} ")
+              .append(h.countAtOrBelow((long) (bound * 1_000_000))).append('\n');
+        }
+        sb.append(metric).append("_bucket{").append(labels).append(",le=\"+Inf\"} ").append(h.getCount()).append('\n');
+        sb.append(metric).append("_sum{").append(labels).append("} ").append(h.getSumMicros() / 1e6).append('\n');
+        sb.append(metric).append("_count{").append(labels).append("} ").append(h.getCount()).append('\n');
+    }
+}
@@ -0,0 +1,129 @@
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * PBKDF2 password hashing for the users table.
+ *
+ * Stored format: pbkdf2$&lt;iterations&gt;$&lt;salt b64&gt;$&lt;hash b64&gt; (about 80 characters, so
+ * users.password must be at least VARCHAR(100)). Rows written before hashing was
+ * introduced still hold the plaintext; {@link #verify} accepts those and
+ * {@link #needsRehash} tells LoginHandler to upgrade them on the next good login.
+ *
+ * Hashing is deliberately slow, so it runs on its own small pool (auth.hashThreads,
+ * default one per core) with a bounded queue. A login storm then queues here instead
+ * of eating every request thread; when the queue is full the caller gets
+ * RejectedExecutionException and answers 503.
+ */
+public class PasswordHasher {
+
+    private static final String PREFIX = "pbkdf2$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA512";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadPoolExecutor pool;
+
+    public static PasswordHasher fromSystemProperties() {
+        return new PasswordHasher(Integer.getInteger("auth.pbkdf2.iterations", 210_000),
+                Integer.getInteger("auth.hashThreads", Runtime.getRuntime().availableProcessors()),
+                Integer.getInteger("auth.hashQueue", 512));
+    }
+
+    public PasswordHasher(int iterations, int threads, int queueLimit) {
+        this.iterations = iterations;
+        AtomicInteger n = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueLimit), r -> {
+                    Thread t = new Thread(r, "password-hash-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** New salted hash of the password, computed on the hashing pool. */
+    public String hash(String password) throws RejectedExecutionException {
+        return await(pool.submit(() -> {
+            byte[] salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            byte[] hash = pbkdf2(password, salt, iterations);
+            Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+            return PREFIX + iterations + "$" + b64.encodeToString(salt) + "$" + b64.encodeToString(hash);
+        }));
+    }
+
+    /** Checks a password against a stored value (hashed or legacy plaintext). */
+    public boolean verify(String password, String stored) throws RejectedExecutionException {
+        if (stored == null) return false;
+        if (!stored.startsWith(PREFIX)) {
+            // legacy plaintext row; constant-time compare
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        int iter;
+        byte[] salt, expected;
+        try {
+            iter = Integer.parseInt(parts[1]);
+            salt = Base64.getDecoder().decode(parts[2]);
+            expected = Base64.getDecoder().decode(parts[3]);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return await(pool.submit(() -> MessageDigest.isEqual(expected, pbkdf2(password, salt, iter))));
+    }
+
+    /** True for plaintext rows and hashes made with fewer iterations than configured now. */
+    public boolean needsRehash(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX)) return true;
+        String[] parts = stored.split("\\$");
+        try {
+            return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static <T> T await(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            f.cancel(true);
+            throw new IllegalStateException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    public int getQueueDepth() {
+        return pool.getQueue().size();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
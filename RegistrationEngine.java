@@ -0,0 +1,234 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capacity-enforcing registration path for /register.
+ *
+ * Every event gets an in-memory seat counter, loaded from the database the first time
+ * the event is seen. A registration first reserves a seat with a CAS on that counter,
+ * so once an event is sold out further requests are answered "full" without touching
+ * MySQL. The reserved seat is then written with one conditional INSERT ... SELECT that
+ * re-checks existence, duplicates and capacity inside the database, which keeps the
+ * table correct even when several server instances share it. A failed insert gives the
+ * seat back, unless the database says the event is full: registrations are never
+ * deleted, so the counter is then set to the database count in place (other threads
+ * may still hold reservations on it) and the seat stays taken.
+ *
+ * The counters double as a materialized view of registrations per event: the catalog
+ * seeds them for every event with one GROUP BY and reads seats_remaining from them,
+ * and a {@link SeatListener} (the /events-stream feed) hears about every change.
+ */
+public class RegistrationEngine implements EventCatalog.SeatCounts {
+
+    /** Told whenever the number of free seats of an event changes. */
+    public interface SeatListener {
+        void seatsChanged(int eventId, int remaining);
+    }
+
+    /** PENDING: the group commit did not answer in time; the row may still be written. */
+    public enum Result { REGISTERED, DUPLICATE, FULL, NOT_FOUND, PENDING }
+
+    static final String INSERT_IF_ALLOWED =
+            "INSERT INTO registrations (event_id, event_name, event_date, user_name) "
+            + "SELECT e.id, e.event_name, e.event_date, ? FROM events e "
+            + "WHERE e.id = ? "
+            + "AND NOT EXISTS (SELECT 1 FROM registrations r WHERE r.event_id = e.id AND r.user_name = ?) "
+            + "AND (e.max_participants IS NULL OR e.max_participants <= 0 "
+            + "OR (SELECT COUNT(*) FROM registrations c WHERE c.event_id = e.id) < e.max_participants)";
+
+    static final String LOAD_SEATS =
+            "SELECT e.max_participants, (SELECT COUNT(*) FROM registrations r WHERE r.event_id = e.id) AS taken "
+            + "FROM events e WHERE e.id = ?";
+
+    static final String COUNT_ALL =
+            "SELECT event_id, COUNT(*) AS taken FROM registrations GROUP BY event_id";
+
+    static final String CHECK_DUPLICATE =
+            "SELECT 1 FROM registrations WHERE event_id = ? AND user_name = ?";
+
+    /** Seats of one event; capacity <= 0 means unlimited. */
+    static final class Seats {
+        volatile int capacity;
+        final AtomicInteger taken;
+
+        Seats(int capacity, int taken) {
+            this.capacity = capacity;
+            this.taken = new AtomicInteger(taken);
+        }
+
+        boolean tryReserve() {
+            if (capacity <= 0) {
+                taken.incrementAndGet();
+                return true;
+            }
+            int t;
+            do {
+                t = taken.get();
+                if (t >= capacity) return false;
+            } while (!taken.compareAndSet(t, t + 1));
+            return true;
+        }
+
+        void release() {
+            taken.decrementAndGet();
+        }
+
+        int remaining() {
+            int c = capacity;
+            return c <= 0 ? -1 : Math.max(0, c - taken.get());
+        }
+
+        /**
+         * Takes capacity and count from the database. A full event stays full, so the count
+         * replaces every reservation made so far, the caller's included: returns true when
+         * that happened and the caller must not release its seat.
+         */
+        boolean resync(int capacity, int taken) {
+            this.capacity = capacity;
+            if (capacity <= 0 || taken < capacity) return false;
+            this.taken.set(taken);
+            return true;
+        }
+    }
+
+    private final ConcurrentHashMap<Integer, Seats> seats = new ConcurrentHashMap<>();
+    private final WriteBehindQueue writes;
+    private volatile SeatListener listener;
+
+    /** @param writes group-commit queue for the insert, or null to insert directly */
+    public RegistrationEngine(WriteBehindQueue writes) {
+        this.writes = writes;
+    }
+
+    public Result register(int eventId, String userName) throws SQLException {
+        Seats s = seatsFor(eventId);
+        if (s == null) return Result.NOT_FOUND;
+        if (!s.tryReserve()) return Result.FULL;
+
+        boolean kept = false;
+        try {
+            int inserted;
+            try {
+                inserted = insert(eventId, userName);
+            } catch (WriteBehindQueue.PendingWriteException e) {
+                // the seat stays reserved until the late commit tells whether it was used
+                kept = true;
+                e.outcome().whenComplete((n, error) -> settleLate(eventId, s, n));
+                return Result.PENDING;
+            }
+            if (inserted == 1) {
+                kept = true;
+                notifyChanged(eventId, s);
+                return Result.REGISTERED;
+            }
+            try (Connection con = DBConnection.getConnection()) {
+                if (isDuplicate(con, eventId, userName)) return Result.DUPLICATE;
+                Seats fresh = load(con, eventId);
+                if (fresh == null) {
+                    seats.remove(eventId);
+                    return Result.NOT_FOUND;
+                }
+                // resync in place: other threads still hold reservations on this counter
+                kept = s.resync(fresh.capacity, fresh.taken.get());
+                notifyChanged(eventId, s);
+                return Result.FULL;
+            }
+        } finally {
+            if (!kept) s.release();
+        }
+    }
+
+    private int insert(int eventId, String userName) throws SQLException {
+        if (writes != null) {
+            return writes.execute(INSERT_IF_ALLOWED, userName, eventId, userName);
+        }
+        try (Connection con = DBConnection.getConnection()) {
+            PreparedStatement insert = con.prepareStatement(INSERT_IF_ALLOWED);
+            insert.setString(1, userName);
+            insert.setInt(2, eventId);
+            insert.setString(3, userName);
+            return insert.executeUpdate();
+        }
+    }
+
+    // runs on the writer thread once a timed-out insert is finally done (null: it failed)
+    private void settleLate(int eventId, Seats s, Integer inserted) {
+        if (inserted == null || inserted != 1) s.release();
+        notifyChanged(eventId, s);
+    }
+
+    private static boolean isDuplicate(Connection con, int eventId, String userName) throws SQLException {
+        PreparedStatement dup = con.prepareStatement(CHECK_DUPLICATE);
+        dup.setInt(1, eventId);
+        dup.setString(2, userName);
+        return dup.executeQuery().next();
+    }
+
+    private Seats seatsFor(int eventId) throws SQLException {
+        Seats s = seats.get(eventId);
+        if (s != null) return s;
+        try (Connection con = DBConnection.getConnection()) {
+            Seats loaded = load(con, eventId);
+            if (loaded == null) return null;
+            Seats prev = seats.putIfAbsent(eventId, loaded);
+            return prev != null ? prev : loaded;
+        }
+    }
+
+    private static Seats load(Connection con, int eventId) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(LOAD_SEATS);
+        ps.setInt(1, eventId);
+        ResultSet rs = ps.executeQuery();
+        if (!rs.next()) return null;
+        return new Seats(rs.getInt("max_participants"), rs.getInt("taken"));
+    }
+
+    // ----- Materialized counts -----
+
+    /** Creates counters for all given events that have none yet, using one GROUP BY query. */
+    @Override
+    public void seed(List<EventCatalog.Event> events) throws SQLException {
+        Map<Integer, Integer> taken = new HashMap<>();
+        try (Connection con = DBConnection.getConnection()) {
+            ResultSet rs = con.prepareStatement(COUNT_ALL).executeQuery();
+            while (rs.next()) {
+                taken.put(rs.getInt("event_id"), rs.getInt("taken"));
+            }
+        }
+        for (EventCatalog.Event e : events) {
+            seats.putIfAbsent(e.id, new Seats(e.maxParticipants, taken.getOrDefault(e.id, 0)));
+        }
+    }
+
+    /** Free seats, or -1 when the event is unlimited or not tracked yet. */
+    @Override
+    public int remaining(int eventId) {
+        Seats s = seats.get(eventId);
+        return s != null ? s.remaining() : -1;
+    }
+
+    public void setListener(SeatListener listener) {
+        this.listener = listener;
+    }
+
+    private void notifyChanged(int eventId, Seats s) {
+        SeatListener l = listener;
+        if (l != null) l.seatsChanged(eventId, s.remaining());
+    }
+
+    /** Drops the cached counter so the next registration reloads it from the database. */
+    public void reconcile(int eventId) {
+        seats.remove(eventId);
+    }
+
+    public void reconcileAll() {
+        seats.clear();
+    }
+}
@@ -0,0 +1,213 @@
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency stress test for {@link RegistrationEngine}: proves that an event is never
+ * oversold and that the in-memory seat counter ends up equal to the stored rows.
+ *
+ *   javac -d out *.java
+ *   java -cp out RegistrationStress          (exit code 1 on any violation)
+ *
+ * Each round creates one event with stress.capacity seats in {@link MemoryDatabase} and
+ * starts stress.threads threads that each try stress.attempts registrations, a
+ * stress.duplicateShare of them with user names shared between threads. Every
+ * {@link Setup} runs stress.rounds rounds.
+ *
+ * After every round: answers that claim a row &lt;= capacity, stored rows &lt;= capacity
+ * and equal to those answers, no user stored twice, and the counter's free seats equal
+ * capacity minus stored rows.
+ */
+public class RegistrationStress {
+
+    private static final int THREADS = Integer.getInteger("stress.threads", 64);
+    private static final int CAPACITY = Integer.getInteger("stress.capacity", 100);
+    private static final int ATTEMPTS = Integer.getInteger("stress.attempts", 20);
+    private static final int ROUNDS = Integer.getInteger("stress.rounds", 20);
+    private static final double DUPLICATE_SHARE = Double.parseDouble(System.getProperty("stress.duplicateShare", "0.3"));
+    private static final int OTHER_WRITERS = 2;
+
+    enum Setup {
+        /** inserts straight through the pool */
+        DIRECT,
+        /** inserts through a WriteBehindQueue */
+        GROUP_COMMIT,
+        /**
+         * direct, while "another server" inserts into the same event through its own
+         * connection: the counter undercounts and the database rejects inserts, so the
+         * counter is resynced while other threads still hold reservations on it
+         */
+        TWO_INSTANCES,
+        /** group commit with a 1ms ack timeout: answers are PENDING and settle late */
+        SLOW_COMMIT,
+        /** group commit with a driver that reports SUCCESS_NO_INFO for batches */
+        NO_INFO
+    }
+
+    private static int failures = 0;
+
+    public static void main(String[] args) throws Exception {
+        // must be set before DBConnection is first touched
+        System.setProperty("db.driver", "MemoryDatabase");
+        System.setProperty("db.url", "jdbc:memory:stress");
+        if (System.getProperty("memory.latencyMicros") == null) System.setProperty("memory.latencyMicros", "200");
+
+        for (Setup setup : Setup.values()) {
+            run(setup);
+        }
+        System.out.println(failures == 0 ? "OK" : failures + " violation(s)");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    private static void run(Setup setup) throws Exception {
+        WriteBehindQueue writes = null;
+        if (setup == Setup.GROUP_COMMIT || setup == Setup.NO_INFO) {
+            writes = new WriteBehindQueue(10_000, 200, 2, 1_000, 10_000);
+        } else if (setup == Setup.SLOW_COMMIT) {
+            writes = new WriteBehindQueue(10_000, 200, 2, 1_000, 1);
+        }
+        MemoryDatabase.setBatchNoInfo(setup == Setup.NO_INFO);
+
+        Map<RegistrationEngine.Result, Integer> totals = new EnumMap<>(RegistrationEngine.Result.class);
+        long rejected = 0;
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            MemoryDatabase.reset();
+            int eventId = MemoryDatabase.addEvent("Stress " + round, "2030-01-01", CAPACITY);
+            RegistrationEngine engine = new RegistrationEngine(writes);
+            Map<RegistrationEngine.Result, Integer> results = round(setup, engine, writes, eventId);
+            rejected += MemoryDatabase.getRejectedRegistrations();
+            for (Map.Entry<RegistrationEngine.Result, Integer> r : results.entrySet()) {
+                totals.merge(r.getKey(), r.getValue(), Integer::sum);
+            }
+        }
+        if (writes != null) writes.shutdown(5_000);
+        MemoryDatabase.setBatchNoInfo(false);
+
+        System.out.printf("%-14s %d rounds in %d ms  %s  conditional inserts rejected by the db: %d%n",
+                setup, ROUNDS, (System.nanoTime() - start) / 1_000_000, totals, rejected);
+        if (setup == Setup.TWO_INSTANCES && rejected == 0) fail(setup, "the database never rejected an insert; counter resync not exercised");
+        if (setup == Setup.SLOW_COMMIT && totals.getOrDefault(RegistrationEngine.Result.PENDING, 0) == 0) {
+            fail(setup, "no registration timed out; late settling not exercised");
+        }
+    }
+
+    private static Map<RegistrationEngine.Result, Integer> round(Setup setup, RegistrationEngine engine,
+                                                               WriteBehindQueue writes, int eventId) throws Exception {
+        Map<RegistrationEngine.Result, AtomicInteger> results = new EnumMap<>(RegistrationEngine.Result.class);
+        for (RegistrationEngine.Result r : RegistrationEngine.Result.values()) results.put(r, new AtomicInteger());
+        AtomicInteger busy = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger otherRows = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int id = t;
+            threads.add(new Thread(() -> {
+                ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                await(go);
+                for (int i = 0; i < ATTEMPTS; i++) {
+                    String user = rnd.nextDouble() < DUPLICATE_SHARE ? "dup-" + rnd.nextInt(THREADS) : "u-" + id + "-" + i;
+                    try {
+                        results.get(engine.register(eventId, user)).incrementAndGet();
+                    } catch (SQLTransientException e) {
+                        busy.incrementAndGet(); // withdrawn from the queue, nothing written
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }, "stress-" + t));
+        }
+        List<Thread> others = new ArrayList<>();
+        for (int t = 0; setup == Setup.TWO_INSTANCES && t < OTHER_WRITERS; t++) {
+            int id = t;
+            others.add(new Thread(() -> {
+                await(go);
+                try (Connection con = DriverManager.getConnection("jdbc:memory:other")) {
+                    PreparedStatement ps = con.prepareStatement(RegistrationEngine.INSERT_IF_ALLOWED);
+                    for (int i = 0; !done.get(); i++) {
+                        String user = "other-" + id + "-" + i;
+                        ps.setString(1, user);
+                        ps.setInt(2, eventId);
+                        ps.setString(3, user);
+                        otherRows.addAndGet(ps.executeUpdate());
+                    }
+                } catch (Exception e) {
+                    errors.incrementAndGet();
+                }
+            }, "other-instance-" + t));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : others) t.start();
+        go.countDown();
+        for (Thread t : threads) t.join();
+        done.set(true);
+        for (Thread t : others) t.join();
+        if (writes != null) settle(writes);
+
+        int registered = results.get(RegistrationEngine.Result.REGISTERED).get() + otherRows.get();
+        int pending = results.get(RegistrationEngine.Result.PENDING).get();
+        int rows = MemoryDatabase.registrations(eventId);
+        if (errors.get() > 0) fail(setup, errors.get() + " registrations threw");
+        if (registered > CAPACITY) fail(setup, "oversold: " + registered + " answers for " + CAPACITY + " seats");
+        if (rows > CAPACITY) fail(setup, "oversold: " + rows + " rows for " + CAPACITY + " seats");
+        if (rows < registered || rows > registered + pending) {
+            fail(setup, rows + " rows for " + registered + " registered and " + pending + " pending answers");
+        }
+        if (MemoryDatabase.duplicateRegistrations() > 0) fail(setup, MemoryDatabase.duplicateRegistrations() + " users stored twice");
+
+        // a dropped counter is reloaded from the database by the next registration; do that here
+        if (engine.remaining(eventId) < 0) {
+            engine.seed(Collections.singletonList(new EventCatalog.Event(eventId, "", "2030-01-01", "", 0, "", CAPACITY)));
+        }
+        // with another writer the counter only learns the true count once the event is full
+        if ((setup != Setup.TWO_INSTANCES || rows == CAPACITY) && engine.remaining(eventId) != CAPACITY - rows) {
+            fail(setup, "counter says " + engine.remaining(eventId) + " free, database " + (CAPACITY - rows));
+        }
+
+        Map<RegistrationEngine.Result, Integer> counts = new EnumMap<>(RegistrationEngine.Result.class);
+        for (Map.Entry<RegistrationEngine.Result, AtomicInteger> r : results.entrySet()) counts.put(r.getKey(), r.getValue().get());
+        return counts;
+    }
+
+    /** Waits until the writer has finished everything queued so far (it works in FIFO order). */
+    private static void settle(WriteBehindQueue writes) throws Exception {
+        String sql = RegistrationEngine.INSERT_IF_ALLOWED;
+        while (true) {
+            try {
+                writes.execute(sql, "settle", -1, "settle"); // no event -1: matches no row
+                return;
+            } catch (WriteBehindQueue.PendingWriteException e) {
+                e.outcome().get();
+                return;
+            } catch (SQLTransientException e) {
+                // withdrawn after the ack timeout: queue it again
+            }
+        }
+    }
+
+    private static void await(CountDownLatch go) {
+        try {
+            go.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void fail(Setup setup, String message) {
+        failures++;
+        System.out.println("FAIL " + setup + ": " + message);
+    }
+}
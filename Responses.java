@@ -0,0 +1,141 @@
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response helpers shared by all handlers.
+ *
+ * Every body goes out with its exact Content-Length (never the chunked mode that
+ * sendResponseHeaders(code, 0) switches on), HEAD gets the headers only, and the
+ * exchange is always closed, so the connection goes back to keep-alive in a clean
+ * state. JSON larger than response.gzipMinBytes is gzipped when the client accepts
+ * it, and API payloads carry a weak ETag (W/"length-crc32") so repeat GETs can be
+ * answered with 304. Weak, because the same entity is served plain or gzipped.
+ *
+ * Streaming endpoints (keyset pages, export, SSE) still choose chunked mode on
+ * purpose; they do not go through here.
+ */
+public final class Responses {
+
+    static final int GZIP_MIN_BYTES = Integer.getInteger("response.gzipMinBytes", 1024);
+
+    private static final String TEXT = "text/plain; charset=utf-8";
+    private static final String JSON = "application/json";
+
+    private Responses() {
+    }
+
+    // ----- Plain responses -----
+
+    /** Text body with an exact Content-Length. */
+    public static void text(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, TEXT, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static void html(HttpExchange exchange, int status, String body) throws IOException {
+        send(exchange, status, "text/html; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 503 with Retry-After, for a full queue or pool the client should simply retry. */
+    public static void busy(HttpExchange exchange, String body) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        text(exchange, 503, body);
+    }
+
+    /** Status line and headers only (302, 304, 401 without a body, ...). */
+    public static void empty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+
+    public static void redirect(HttpExchange exchange, String location) throws IOException {
+        exchange.getResponseHeaders().set("Location", location);
+        empty(exchange, 302);
+    }
+
+    public static void methodNotAllowed(HttpExchange exchange, String allow) throws IOException {
+        exchange.getResponseHeaders().set("Allow", allow);
+        text(exchange, 405, "Method Not Allowed");
+    }
+
+    /** 500 with the error message; the stack trace goes to the log and the error counter. */
+    public static void serverError(HttpExchange exchange, Exception e) throws IOException {
+        Metrics.error(exchange.getHttpContext().getPath(), e);
+        text(exchange, 500, "Error: " + e.getMessage());
+    }
+
+    // ----- JSON -----
+
+    /** JSON that is not cacheable (results of a POST, errors). Gzipped when large. */
+    public static void json(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        sendMaybeGzipped(exchange, status, JSON, body, null);
+    }
+
+    /**
+     * Cacheable JSON for a GET: weak ETag (computed from the body when etag is null),
+     * 304 on a matching If-None-Match, gzip when accepted and large. A caller that
+     * serves the same bytes often can pass them pre-gzipped.
+     */
+    public static void jsonCached(HttpExchange exchange, byte[] body, String etag, byte[] gzipped) throws IOException {
+        if (etag == null) etag = weakEtag(body);
+        exchange.getResponseHeaders().set("ETag", etag);
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        if (EventCatalog.matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            empty(exchange, 304);
+            return;
+        }
+        sendMaybeGzipped(exchange, 200, JSON, body, gzipped);
+    }
+
+    public static String weakEtag(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return "W/\"" + Integer.toHexString(body.length) + "-" + Long.toHexString(crc.getValue()) + "\"";
+    }
+
+    public static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos, 8192)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // in-memory streams do not fail
+        }
+        return bos.toByteArray();
+    }
+
+    public static boolean acceptsGzip(HttpExchange exchange) {
+        return StaticAssets.acceptsGzip(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+    }
+
+    private static void sendMaybeGzipped(HttpExchange exchange, int status, String type,
+                                         byte[] body, byte[] gzipped) throws IOException {
+        if (body.length >= GZIP_MIN_BYTES && acceptsGzip(exchange)) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            send(exchange, status, type, gzipped != null ? gzipped : gzip(body));
+        } else {
+            send(exchange, status, type, body);
+        }
+    }
+
+    /** Any other content type, with the same Content-Length and HEAD handling. */
+    static void send(HttpExchange exchange, int status, String type, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", type);
+        if (exchange.getRequestMethod().equalsIgnoreCase("HEAD")) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(body.length));
+            exchange.sendResponseHeaders(status, -1);
+        } else {
+            exchange.sendResponseHeaders(status, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+        }
+        exchange.close();
+    }
+}
@@ -0,0 +1,227 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Server-Sent Events feed of seats remaining per event: GET /events-stream.
+ *
+ * RegistrationEngine reports every change through {@link #seatsChanged}; changes are
+ * coalesced per event and one thread pushes them to all subscribers every
+ * sse.flushMs (250ms), so a burst of registrations on a popular event becomes one
+ * message per flush instead of one per registration and subscriber:
+ *
+ *   event: seats
+ *   data: {"id":7,"seats_remaining":12}
+ *
+ * The handler only sends the headers and keeps the exchange open, so subscribers do
+ * not hold a server thread. A comment line goes out every 15s to keep proxies from
+ * closing idle streams; clients whose write fails are dropped.
+ *
+ * The flusher never writes to a socket itself: each client's writes run on a writer
+ * thread, and messages that arrive while a write is still in progress are appended to
+ * that client's backlog. A client whose write has been stuck for sse.writeTimeoutMs,
+ * or whose backlog passes sse.maxBacklogBytes, is dropped, so one slow reader cannot
+ * hold up the feed for everybody else.
+ */
+public class SeatFeed implements HttpHandler, RegistrationEngine.SeatListener {
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final long HEARTBEAT_NANOS = TimeUnit.SECONDS.toNanos(15);
+
+    /** One open stream. Guarded by itself: whether a write is running and what waits behind it. */
+    private static final class Client {
+        final HttpExchange exchange;
+        final ByteArrayOutputStream backlog = new ByteArrayOutputStream();
+        boolean writing;
+        long writingSince;
+
+        Client(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+    }
+
+    private final int maxClients;
+    private final long flushMs;
+    private final long writeTimeoutNanos;
+    private final int maxBacklogBytes;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Integer, Integer> pending = new ConcurrentHashMap<>();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ExecutorService writers;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    public static SeatFeed fromSystemProperties() {
+        return new SeatFeed(Integer.getInteger("sse.maxClients", 5000), Long.getLong("sse.flushMs", 250),
+                Long.getLong("sse.writeTimeoutMs", 5000), Integer.getInteger("sse.maxBacklogBytes", 64 * 1024));
+    }
+
+    public SeatFeed(int maxClients, long flushMs) {
+        this(maxClients, flushMs, 5000, 64 * 1024);
+    }
+
+    public SeatFeed(int maxClients, long flushMs, long writeTimeoutMs, int maxBacklogBytes) {
+        this.maxClients = maxClients;
+        this.flushMs = flushMs;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMs);
+        this.maxBacklogBytes = maxBacklogBytes;
+        // a blocked write holds its thread until the socket gives up, so the pool is not capped
+        AtomicInteger n = new AtomicInteger();
+        this.writers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "seat-feed-writer-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher = new Thread(this::run, "seat-feed");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    // ----- Producer side -----
+
+    @Override
+    public void seatsChanged(int eventId, int remaining) {
+        pending.put(eventId, remaining); // newer value replaces an unsent one
+    }
+
+    // ----- Subscribers -----
+
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equalsIgnoreCase("GET")) {
+            Responses.methodNotAllowed(exchange, "GET");
+            return;
+        }
+        if (clients.size() >= maxClients) {
+            rejected.incrementAndGet();
+            exchange.getResponseHeaders().add("Retry-After", "10");
+            Responses.text(exchange, 503, "Too many subscribers");
+            return;
+        }
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0); // chunked, left open
+        OutputStream out = exchange.getResponseBody();
+        out.write("retry: 3000\n\n".getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        clients.add(new Client(exchange));
+    }
+
+    private void run() {
+        long lastWrite = System.nanoTime();
+        while (running) {
+            try {
+                Thread.sleep(flushMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (clients.isEmpty()) {
+                pending.clear();
+                continue;
+            }
+            byte[] batch = drain();
+            if (batch != null) {
+                broadcast(batch);
+                lastWrite = System.nanoTime();
+            } else if (System.nanoTime() - lastWrite > HEARTBEAT_NANOS) {
+                broadcast(HEARTBEAT);
+                lastWrite = System.nanoTime();
+            }
+        }
+    }
+
+    // all pending changes as one block of SSE messages, or null when there are none
+    private byte[] drain() {
+        if (pending.isEmpty()) return null;
+        StringBuilder sb = new StringBuilder(64 * pending.size());
+        for (Map.Entry<Integer, Integer> e : pending.entrySet()) {
+            int remaining = e.getValue();
+            // only if unchanged: a value put since it was read stays for the next flush
+            pending.remove(e.getKey(), remaining);
+            sb.append("event: seats\ndata: {\"id\":").append(e.getKey()).append(",\"seats_remaining\":")
+              .append(remaining >= 0 ? String.valueOf(remaining) : "null").append("}\n\n");
+            messages.incrementAndGet();
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // hands the data to every client's writer; never blocks on a socket
+    private void broadcast(byte[] data) {
+        long now = System.nanoTime();
+        for (Client client : clients) {
+            synchronized (client) {
+                if (client.writing) {
+                    if (now - client.writingSince > writeTimeoutNanos
+                            || client.backlog.size() + data.length > maxBacklogBytes) {
+                        drop(client);
+                    } else {
+                        client.backlog.write(data, 0, data.length);
+                    }
+                    continue;
+                }
+                client.writing = true;
+                client.writingSince = now;
+            }
+            writers.execute(() -> write(client, data));
+        }
+    }
+
+    // on a writer thread: sends data, then whatever queued up behind it
+    private void write(Client client, byte[] data) {
+        try {
+            OutputStream out = client.exchange.getResponseBody();
+            while (true) {
+                out.write(data);
+                out.flush();
+                synchronized (client) {
+                    if (client.backlog.size() == 0) {
+                        client.writing = false;
+                        return;
+                    }
+                    data = client.backlog.toByteArray();
+                    client.backlog.reset();
+                    client.writingSince = System.nanoTime();
+                }
+            }
+        } catch (IOException e) {
+            // client went away, or was dropped while this write was stuck
+            if (clients.remove(client)) client.exchange.close();
+        }
+    }
+
+    // the close runs on a writer thread: it may block on the same stalled socket
+    private void drop(Client client) {
+        if (!clients.remove(client)) return;
+        dropped.incrementAndGet();
+        writers.execute(client.exchange::close);
+    }
+
+    /** Stops the flusher and ends all streams. */
+    public void close() {
+        running = false;
+        flusher.interrupt();
+        for (Client client : clients) {
+            writers.execute(client.exchange::close);
+        }
+        clients.clear();
+        writers.shutdown();
+    }
+
+    public int getClients() { return clients.size(); }
+    public long getMessages() { return messages.get(); }
+    public long getRejected() { return rejected.get(); }
+    public long getDropped() { return dropped.get(); }
+}
@@ -0,0 +1,178 @@
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executor for the HttpServer so exchanges no longer all run on the dispatcher thread.
+ *
+ * Two modes, picked with -Dserver.executor:
+ *   pool    - bounded platform thread pool (server.threads) with a bounded queue
+ *             (server.queue). Work that does not fit is shed with a 503.
+ *   virtual - one virtual thread per exchange, shed once server.maxInFlight exchanges
+ *             are running. Needs Java 21+, falls back to "pool" on older runtimes.
+ *
+ * Shedding works together with {@link #filter()}: a rejected exchange is run on the
+ * dispatcher thread with a flag set, and the filter answers it with 503 straight away
+ * instead of calling the handler.
+ */
+public class ServerExecutor implements Executor {
+
+    private static final ThreadLocal<Boolean> SHED = new ThreadLocal<>();
+
+    private final String mode;
+    private final ExecutorService delegate;
+    private final ThreadPoolExecutor pool;  // null in virtual mode
+    private final int maxInFlight;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong handled = new AtomicLong();
+    private final AtomicLong shed = new AtomicLong();
+    private final AtomicLong latencyNanosTotal = new AtomicLong();
+    private final AtomicLong latencyNanosMax = new AtomicLong();
+    private final AtomicLong queueWaitNanosTotal = new AtomicLong();
+
+    public static ServerExecutor fromSystemProperties() {
+        String mode = System.getProperty("server.executor", "pool");
+        int threads = Integer.getInteger("server.threads", Runtime.getRuntime().availableProcessors() * 4);
+        int queue = Integer.getInteger("server.queue", 256);
+        int maxInFlight = Integer.getInteger("server.maxInFlight", 10_000);
+        return new ServerExecutor(mode, threads, queue, maxInFlight);
+    }
+
+    public ServerExecutor(String mode, int threads, int queueLimit, int maxInFlight) {
+        ExecutorService virtual = "virtual".equalsIgnoreCase(mode) ? newVirtualThreadExecutor() : null;
+        if (virtual != null) {
+            this.mode = "virtual";
+            this.delegate = virtual;
+            this.pool = null;
+            this.maxInFlight = maxInFlight;
+        } else {
+            if ("virtual".equalsIgnoreCase(mode)) {
+                System.err.println("Virtual threads not available on this JVM, using a bounded pool");
+            }
+            AtomicInteger n = new AtomicInteger();
+            this.mode = "pool";
+            this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueLimit),
+                    r -> new Thread(r, "http-worker-" + n.incrementAndGet()),
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.pool.allowCoreThreadTimeOut(true);
+            this.delegate = pool;
+            this.maxInFlight = threads + queueLimit;
+        }
+    }
+
+    /** Executors.newVirtualThreadPerTaskExecutor() when the runtime has it, else null. */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable exchange) {
+        if (pool == null && inFlight.get() >= maxInFlight) {
+            runShed(exchange);
+            return;
+        }
+        long submitted = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                queued.decrementAndGet();
+                queueWaitNanosTotal.addAndGet(System.nanoTime() - submitted);
+                exchange.run();
+            });
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            runShed(exchange);
+        }
+    }
+
+    private void runShed(Runnable exchange) {
+        shed.incrementAndGet();
+        SHED.set(Boolean.TRUE);
+        try {
+            exchange.run();
+        } finally {
+            SHED.remove();
+        }
+    }
+
+    /** Filter to add to every context: answers shed exchanges with 503 and times the rest. */
+    public Filter filter() {
+        return new Filter() {
+            @Override
+            public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+                if (SHED.get() != null) {
+                    Responses.busy(exchange, "Server busy, try again");
+                    return;
+                }
+                inFlight.incrementAndGet();
+                long start = System.nanoTime();
+                try {
+                    chain.doFilter(exchange);
+                } finally {
+                    long nanos = System.nanoTime() - start;
+                    inFlight.decrementAndGet();
+                    handled.incrementAndGet();
+                    latencyNanosTotal.addAndGet(nanos);
+                    long max;
+                    while (nanos > (max = latencyNanosMax.get())) {
+                        if (latencyNanosMax.compareAndSet(max, nanos)) break;
+                    }
+                }
+            }
+
+            @Override
+            public String description() {
+                return "Load shedding and handler timing";
+            }
+        };
+    }
+
+    /** Stops taking new work and waits for running exchanges to finish. */
+    public boolean shutdown(long timeoutMs) throws InterruptedException {
+        delegate.shutdown();
+        return delegate.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    // ----- Metrics -----
+
+    public String getMode() { return mode; }
+    public int getInFlight() { return inFlight.get(); }
+    public int getQueueDepth() { return queued.get(); }
+    public long getHandled() { return handled.get(); }
+    public long getShed() { return shed.get(); }
+    public long getLatencyNanosMax() { return latencyNanosMax.get(); }
+
+    public long getLatencyNanosAvg() {
+        long n = handled.get();
+        return n == 0 ? 0 : latencyNanosTotal.get() / n;
+    }
+
+    public long getQueueWaitNanosAvg() {
+        long n = handled.get();
+        return n == 0 ? 0 : queueWaitNanosTotal.get() / n;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerExecutor[mode=" + mode + ", inFlight=" + getInFlight() + ", queued=" + getQueueDepth()
+                + ", handled=" + getHandled() + ", shed=" + getShed()
+                + ", avgLatencyUs=" + getLatencyNanosAvg() / 1000 + ", maxLatencyUs=" + getLatencyNanosMax() / 1000 + "]";
+    }
+}
@@ -0,0 +1,243 @@
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cookie based sessions, replacing the old global Main.loggedInUser.
+ *
+ * LoginHandler creates a session holding the user's name, email and role; the id goes
+ * to the browser in the EMS_SESSION cookie. Lookups are a plain ConcurrentHashMap get
+ * (no locks on the read path) and admin checks use the cached role, so they never need
+ * the users table. Sessions expire after sessions.ttlMinutes of inactivity and are swept
+ * in the background.
+ *
+ * With -Dsessions.snapshot=path the store is written to that file periodically and on
+ * shutdown, and read back on startup so logins survive a restart. The file holds live
+ * session ids, so it is created readable by the owner only (rw-------) where the file
+ * system supports POSIX permissions.
+ */
+public class SessionStore {
+
+    public static final String COOKIE = "EMS_SESSION";
+
+    public static final class Session {
+        final String id;
+        final String name;
+        final String email;
+        final String role;
+        volatile long expiresAt;
+
+        Session(String id, String name, String email, String role, long expiresAt) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+            this.role = role;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isAdmin() {
+            return "admin".equalsIgnoreCase(role);
+        }
+
+        // System.nanoTime() of this session's last database write, 0 if none
+        private volatile long lastWriteNanos;
+
+        /** Records a write, so the session's reads go to the primary for a while (read-your-writes). */
+        public void markWrite() {
+            lastWriteNanos = System.nanoTime();
+        }
+
+        public boolean wroteWithin(long nanos) {
+            long last = lastWriteNanos;
+            return last != 0 && System.nanoTime() - last < nanos;
+        }
+    }
+
+    private static final FileAttribute<Set<PosixFilePermission>> OWNER_ONLY =
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"));
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long ttlMillis;
+    private final Path snapshotFile;
+    private final ScheduledExecutorService sweeper;
+
+    public static SessionStore fromSystemProperties() {
+        String snapshot = System.getProperty("sessions.snapshot");
+        return new SessionStore(TimeUnit.MINUTES.toMillis(Long.getLong("sessions.ttlMinutes", 30)),
+                snapshot != null ? Paths.get(snapshot) : null);
+    }
+
+    public SessionStore(long ttlMillis, Path snapshotFile) {
+        this.ttlMillis = ttlMillis;
+        this.snapshotFile = snapshotFile;
+        if (snapshotFile != null) restore();
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 60, 60, TimeUnit.SECONDS);
+        if (snapshotFile != null) {
+            sweeper.scheduleWithFixedDelay(this::snapshotQuietly, 5, 5, TimeUnit.MINUTES);
+        }
+    }
+
+    // ----- Create / find / remove -----
+
+    public Session create(String name, String email, String role) {
+        byte[] raw = new byte[16];
+        random.nextBytes(raw);
+        String id = Base64.getUrlEncoder().withoutPadding().encodeToString(raw);
+        Session s = new Session(id, name, email, role, System.currentTimeMillis() + ttlMillis);
+        sessions.put(id, s);
+        return s;
+    }
+
+    /** Session for the exchange's cookie, or null if there is none or it has expired. */
+    public Session find(HttpExchange exchange) {
+        String id = cookieValue(exchange.getRequestHeaders().get("Cookie"));
+        return id != null ? find(id) : null;
+    }
+
+    public Session find(String id) {
+        Session s = sessions.get(id);
+        if (s == null) return null;
+        long now = System.currentTimeMillis();
+        if (now > s.expiresAt) {
+            sessions.remove(id, s);
+            return null;
+        }
+        // sliding expiry; only write when a noticeable part of the TTL has passed
+        if (s.expiresAt - now < ttlMillis - ttlMillis / 8) {
+            s.expiresAt = now + ttlMillis;
+        }
+        return s;
+    }
+
+    public void remove(String id) {
+        if (id != null) sessions.remove(id);
+    }
+
+    public void remove(HttpExchange exchange) {
+        remove(cookieValue(exchange.getRequestHeaders().get("Cookie")));
+    }
+
+    public String cookieHeader(Session s) {
+        return COOKIE + "=" + s.id + "; Path=/; HttpOnly; SameSite=Lax; Max-Age=" + (ttlMillis / 1000);
+    }
+
+    public static String expiredCookieHeader() {
+        return COOKIE + "=; Path=/; HttpOnly; SameSite=Lax; Max-Age=0";
+    }
+
+    static String cookieValue(List<String> cookieHeaders) {
+        if (cookieHeaders == null) return null;
+        for (String header : cookieHeaders) {
+            int from = 0;
+            while (from < header.length()) {
+                int end = header.indexOf(';', from);
+                if (end < 0) end = header.length();
+                int eq = header.indexOf('=', from);
+                if (eq > 0 && eq < end && header.substring(from, eq).trim().equals(COOKIE)) {
+                    return header.substring(eq + 1, end).trim();
+                }
+                from = end + 1;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // package-private so Bench can run it against live traffic
+    void sweep() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(s -> now > s.expiresAt);
+    }
+
+    // ----- Snapshot file -----
+
+    /** Writes all live sessions to the snapshot file (owner-only temp file + atomic move). */
+    public void snapshot() throws IOException {
+        if (snapshotFile == null) return;
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        // a fresh file, so a leftover tmp with wider permissions is never reused
+        Files.deleteIfExists(tmp);
+        if (tmp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(tmp, OWNER_ONLY);
+        } else {
+            Files.createFile(tmp);
+        }
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            long now = System.currentTimeMillis();
+            for (Session s : sessions.values()) {
+                if (now > s.expiresAt) continue;
+                w.write(s.id + "\t" + s.expiresAt + "\t" + enc(s.role) + "\t" + enc(s.email) + "\t" + enc(s.name));
+                w.newLine();
+            }
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException e) {
+            System.err.println("sessions: snapshot failed: " + e.getMessage());
+        }
+    }
+
+    private void restore() {
+        if (!Files.exists(snapshotFile)) return;
+        long now = System.currentTimeMillis();
+        try (BufferedReader r = Files.newBufferedReader(snapshotFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] f = line.split("\t", -1);
+                if (f.length != 5) continue;
+                long expiresAt = Long.parseLong(f[1]);
+                if (now > expiresAt) continue;
+                sessions.put(f[0], new Session(f[0], dec(f[4]), dec(f[3]), dec(f[2]), expiresAt));
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("sessions: could not read snapshot: " + e.getMessage());
+        }
+    }
+
+    private static String enc(String s) {
+        return s == null ? "" : URLEncoder.encode(s, StandardCharsets.UTF_8);
+    }
+
+    private static String dec(String s) {
+        return URLDecoder.decode(s, StandardCharsets.UTF_8);
+    }
+
+    public void close() {
+        sweeper.shutdownNow();
+        snapshotQuietly();
+    }
+}
@@ -0,0 +1,286 @@
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the files under /public from memory.
+ *
+ * Every file is read once (at startup, or on first request) together with a gzip copy
+ * for text types, an ETag and a Last-Modified date. Files above mmapThreshold are
+ * memory-mapped instead of copied onto the heap. A WatchService thread reloads a file
+ * when it changes on disk, so edits show up without a restart.
+ *
+ * Responses carry ETag / Last-Modified / Cache-Control and conditional requests get a
+ * 304. Request paths are normalized and must stay inside the public directory, so
+ * "/../DBConnection.java" style requests get a 404.
+ */
+public class StaticAssets {
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final int GZIP_MIN_SIZE = 512;
+
+    static final class Asset {
+        final String contentType;
+        final byte[] bytes;              // null when mapped
+        final MappedByteBuffer mapped;   // null when on heap
+        final long length;
+        final byte[] gzip;               // null when not worth compressing
+        final String etag;
+        final String lastModified;
+        final long lastModifiedSeconds;
+
+        Asset(String contentType, byte[] bytes, MappedByteBuffer mapped, long length, byte[] gzip,
+              String etag, long lastModifiedMillis) {
+            this.contentType = contentType;
+            this.bytes = bytes;
+            this.mapped = mapped;
+            this.length = length;
+            this.gzip = gzip;
+            this.etag = etag;
+            this.lastModifiedSeconds = lastModifiedMillis / 1000;
+            this.lastModified = HTTP_DATE.format(Instant.ofEpochSecond(lastModifiedSeconds));
+        }
+    }
+
+    private final Path root;
+    private final long mmapThreshold;
+    private final ConcurrentHashMap<Path, Asset> cache = new ConcurrentHashMap<>();
+    private WatchService watcher;
+
+    public StaticAssets(Path root, long mmapThreshold) {
+        this.root = root.toAbsolutePath().normalize();
+        this.mmapThreshold = mmapThreshold;
+    }
+
+    /** Loads every file under the root and starts watching it for changes. */
+    public void start() {
+        if (!Files.isDirectory(root)) {
+            System.err.println("static: " + root + " does not exist");
+            return;
+        }
+        try {
+            watcher = root.getFileSystem().newWatchService();
+            preload(root);
+        } catch (IOException e) {
+            System.err.println("static: could not watch " + root + ": " + e.getMessage());
+        }
+        Thread t = new Thread(this::watch, "static-watcher");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void preload(Path dir) throws IOException {
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path p : entries) {
+                if (Files.isDirectory(p)) {
+                    preload(p);
+                } else {
+                    reload(p);
+                }
+            }
+        }
+    }
+
+    private void watch() {
+        if (watcher == null) return;
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        cache.clear();
+                        continue;
+                    }
+                    Path changed = dir.resolve((Path) event.context());
+                    if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                        cache.remove(changed);
+                    } else if (Files.isDirectory(changed)) {
+                        preload(changed);
+                    } else {
+                        reload(changed);
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // shutting down
+        } catch (IOException e) {
+            System.err.println("static: watcher stopped: " + e.getMessage());
+        }
+    }
+
+    private Asset reload(Path file) {
+        try {
+            Asset a = read(file);
+            cache.put(file, a);
+            return a;
+        } catch (IOException e) {
+            cache.remove(file);
+            return null;
+        }
+    }
+
+    private Asset read(Path file) throws IOException {
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        long size = Files.size(file);
+        String type = contentType(file.getFileName().toString());
+
+        if (size > mmapThreshold) {
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+                return new Asset(type, null, mapped, size, null, etag, modified);
+            }
+        }
+
+        byte[] bytes = Files.readAllBytes(file);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        String etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(bytes.length) + "\"";
+        return new Asset(type, bytes, null, bytes.length, compressible(type) ? gzip(bytes) : null, etag, modified);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        if (bytes.length < GZIP_MIN_SIZE) return null;
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 3);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(bytes);
+        }
+        byte[] out = bos.toByteArray();
+        return out.length < bytes.length ? out : null;
+    }
+
+    // ----- Serving -----
+
+    /**
+     * Serves the file for a request path. Returns false (and sends nothing) when there is
+     * no such file inside the root, so callers can answer 404 their own way.
+     */
+    public boolean serve(HttpExchange exchange, String requestPath) throws IOException {
+        Asset a = lookup(requestPath);
+        if (a == null) return false;
+
+        Headers req = exchange.getRequestHeaders();
+        Headers resp = exchange.getResponseHeaders();
+        resp.set("ETag", a.etag);
+        resp.set("Last-Modified", a.lastModified);
+        resp.set("Cache-Control", a.contentType.startsWith("text/html") ? "no-cache" : "public, max-age=3600");
+        if (a.gzip != null) resp.set("Vary", "Accept-Encoding");
+
+        if (notModified(req, a)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return true;
+        }
+
+        boolean head = exchange.getRequestMethod().equalsIgnoreCase("HEAD");
+        boolean useGzip = a.gzip != null && acceptsGzip(req.getFirst("Accept-Encoding"));
+        resp.set("Content-Type", a.contentType);
+        if (useGzip) resp.set("Content-Encoding", "gzip");
+
+        long length = useGzip ? a.gzip.length : a.length;
+        exchange.sendResponseHeaders(200, head ? -1 : length);
+        if (!head) {
+            OutputStream out = exchange.getResponseBody();
+            if (useGzip) {
+                out.write(a.gzip);
+            } else if (a.bytes != null) {
+                out.write(a.bytes);
+            } else {
+                Channels.newChannel(out).write(a.mapped.duplicate());
+            }
+        }
+        exchange.close();
+        return true;
+    }
+
+    private Asset lookup(String requestPath) {
+        if (requestPath == null || requestPath.indexOf('\0') >= 0) return null;
+        String rel = requestPath.startsWith("/") ? requestPath.substring(1) : requestPath;
+        Path file;
+        try {
+            file = root.resolve(rel).normalize();
+        } catch (java.nio.file.InvalidPathException e) {
+            return null;
+        }
+        // no ".." or absolute paths out of the public folder
+        if (!file.startsWith(root) || file.equals(root)) return null;
+
+        Asset a = cache.get(file);
+        if (a != null) return a;
+        if (!Files.isRegularFile(file)) return null;
+        return reload(file);
+    }
+
+    private static boolean notModified(Headers req, Asset a) {
+        String inm = req.getFirst("If-None-Match");
+        if (inm != null) return EventCatalog.matches(inm, a.etag);
+        String ims = req.getFirst("If-Modified-Since");
+        if (ims != null) {
+            try {
+                return ZonedDateTime.parse(ims, HTTP_DATE).toEpochSecond() >= a.lastModifiedSeconds;
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+        return false;
+    }
+
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String part : acceptEncoding.split(",")) {
+            String p = part.trim();
+            if (p.startsWith("gzip") && !p.replace(" ", "").endsWith(";q=0")) return true;
+        }
+        return false;
+    }
+
+    static String contentType(String filename) {
+        if (filename.endsWith(".html")) return "text/html; charset=utf-8";
+        if (filename.endsWith(".css")) return "text/css; charset=utf-8";
+        if (filename.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (filename.endsWith(".json")) return "application/json";
+        if (filename.endsWith(".svg")) return "image/svg+xml";
+        if (filename.endsWith(".png")) return "image/png";
+        if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) return "image/jpeg";
+        if (filename.endsWith(".ico")) return "image/x-icon";
+        return "application/octet-stream";
+    }
+
+    private static boolean compressible(String type) {
+        return type.startsWith("text/") || type.startsWith("application/javascript")
+                || type.startsWith("application/json") || type.startsWith("image/svg");
+    }
+
+    public void close() {
+        try {
+            if (watcher != null) watcher.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
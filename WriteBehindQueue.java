@@ -0,0 +1,269 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Opt-in group commit for the small INSERTs done by /register and /signup.
+ *
+ * Handlers call {@link #execute(String, Object...)} just like executeUpdate(): the call
+ * blocks until the row has been committed and returns its update count, so the client
+ * still gets a durable answer. Behind it a single writer thread collects the pending
+ * statements for up to writes.windowMs (or writes.maxBatch rows), runs them with
+ * addBatch/executeBatch in one transaction and commits once for the whole group.
+ *
+ * If a batch fails, it is rolled back and replayed row by row in autocommit mode so
+ * one bad row only fails its own request. When the queue is full, execute() waits up to
+ * writes.offerTimeoutMs and then throws SQLTransientException (backpressure). When the
+ * commit is not acknowledged within writes.ackTimeoutMs, a statement still waiting in
+ * the queue is withdrawn (SQLTransientException, nothing was written); one the writer
+ * already took may still commit, so the caller gets a {@link PendingWriteException}
+ * whose future completes with the real outcome.
+ *
+ * Enabled with -Dwrites.batch=true; {@link #fromSystemProperties()} returns null otherwise.
+ */
+public class WriteBehindQueue {
+
+    private static final class Job {
+        final String sql;
+        final Object[] params;
+        final boolean counted;
+        final CompletableFuture<Integer> done = new CompletableFuture<>();
+
+        Job(String sql, Object[] params, boolean counted) {
+            this.sql = sql;
+            this.params = params;
+            this.counted = counted;
+        }
+    }
+
+    /** The ack timed out after the writer took the statement: it may still commit. */
+    public static final class PendingWriteException extends SQLTransientException {
+        private static final long serialVersionUID = 1L;
+        private final transient CompletableFuture<Integer> outcome;
+
+        PendingWriteException(CompletableFuture<Integer> outcome, Throwable cause) {
+            super("Write not acknowledged yet", cause);
+            this.outcome = outcome;
+        }
+
+        /** Completes with the update count (or fails) once the writer is done with the statement. */
+        public CompletableFuture<Integer> outcome() {
+            return outcome;
+        }
+    }
+
+    private final BlockingQueue<Job> queue;
+    private final int maxBatch;
+    private final long windowNanos;
+    private final long offerTimeoutMs;
+    private final long ackTimeoutMs;
+    private final Thread writer;
+    private volatile boolean stopping = false;
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    public static WriteBehindQueue fromSystemProperties() {
+        if (!Boolean.getBoolean("writes.batch")) return null;
+        return new WriteBehindQueue(
+                Integer.getInteger("writes.capacity", 10_000),
+                Integer.getInteger("writes.maxBatch", 200),
+                Long.getLong("writes.windowMs", 5),
+                Long.getLong("writes.offerTimeoutMs", 200),
+                Long.getLong("writes.ackTimeoutMs", 10_000));
+    }
+
+    public WriteBehindQueue(int capacity, int maxBatch, long windowMs, long offerTimeoutMs, long ackTimeoutMs) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.ackTimeoutMs = ackTimeoutMs;
+        this.writer = new Thread(this::run, "db-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues one statement and waits until it is committed. Returns the exact update count:
+     * if the driver reports SUCCESS_NO_INFO for the batch, the batch is rolled back and
+     * replayed row by row, since a conditional insert may just as well have matched no row.
+     */
+    public int execute(String sql, Object... params) throws SQLException {
+        return submit(new Job(sql, params, true));
+    }
+
+    /**
+     * Like {@link #execute} for statements whose update count the caller ignores (plain
+     * INSERT ... VALUES); may return Statement.SUCCESS_NO_INFO, so a driver that rewrites
+     * batches keeps them batched.
+     */
+    public int executeUncounted(String sql, Object... params) throws SQLException {
+        return submit(new Job(sql, params, false));
+    }
+
+    private int submit(Job job) throws SQLException {
+        boolean queued;
+        try {
+            queued = !stopping && queue.offer(job, offerTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientException("Interrupted while queueing write", e);
+        }
+        if (!queued) {
+            rejected.incrementAndGet();
+            throw new SQLTransientException("Write queue is full, try again");
+        }
+
+        try {
+            return job.done.get(ackTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) throw (SQLException) cause;
+            throw new SQLException(cause);
+        } catch (TimeoutException e) {
+            if (queue.remove(job)) {
+                throw new SQLTransientException("Timed out waiting for write to commit", e);
+            }
+            throw new PendingWriteException(job.done, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientException("Interrupted while waiting for write", e);
+        }
+    }
+
+    // ----- Writer thread -----
+
+    private void run() {
+        List<Job> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            Job first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (stopping && queue.isEmpty()) return;
+                continue;
+            }
+
+            batch.add(first);
+            long deadline = System.nanoTime() + windowNanos;
+            try {
+                while (batch.size() < maxBatch) {
+                    long left = deadline - System.nanoTime();
+                    if (left <= 0) break;
+                    Job next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException ignored) {
+                // flush what we have; stopping is checked on the next loop
+            }
+            queue.drainTo(batch, maxBatch - batch.size());
+
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<Job> batch) {
+        // keep submission order inside each statement
+        Map<String, List<Job>> bySql = new LinkedHashMap<>();
+        for (Job job : batch) {
+            bySql.computeIfAbsent(job.sql, k -> new ArrayList<>()).add(job);
+        }
+
+        try (Connection con = DBConnection.getConnection()) {
+            try {
+                con.setAutoCommit(false);
+                Map<Job, Integer> results = new LinkedHashMap<>();
+                for (Map.Entry<String, List<Job>> group : bySql.entrySet()) {
+                    PreparedStatement ps = con.prepareStatement(group.getKey());
+                    for (Job job : group.getValue()) {
+                        bind(ps, job.params);
+                        ps.addBatch();
+                    }
+                    int[] counts = ps.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        Job job = group.getValue().get(i);
+                        // drivers that rewrite batches may only report SUCCESS_NO_INFO
+                        if (counts[i] == Statement.SUCCESS_NO_INFO && job.counted) {
+                            throw new SQLException("No update count for a counted statement");
+                        }
+                        results.put(job, counts[i]);
+                    }
+                }
+                con.commit();
+                batches.incrementAndGet();
+                rows.addAndGet(batch.size());
+                for (Map.Entry<Job, Integer> r : results.entrySet()) {
+                    r.getKey().done.complete(r.getValue());
+                }
+            } catch (SQLException e) {
+                try { con.rollback(); } catch (SQLException ignored) {}
+                replayOneByOne(con, batch);
+            }
+        } catch (SQLException e) {
+            for (Job job : batch) job.done.completeExceptionally(e);
+        }
+    }
+
+    private void replayOneByOne(Connection con, List<Job> batch) throws SQLException {
+        fallbacks.incrementAndGet();
+        con.setAutoCommit(true);
+        for (Job job : batch) {
+            try {
+                PreparedStatement ps = con.prepareStatement(job.sql);
+                bind(ps, job.params);
+                job.done.complete(ps.executeUpdate());
+                rows.incrementAndGet();
+            } catch (SQLException e) {
+                job.done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            ps.setObject(i + 1, params[i]);
+        }
+    }
+
+    /** Stops taking writes and waits for everything already queued to be committed. */
+    public boolean shutdown(long timeoutMs) throws InterruptedException {
+        stopping = true;
+        writer.join(timeoutMs);
+        return !writer.isAlive();
+    }
+
+    // ----- Metrics -----
+
+    public int getQueueDepth() { return queue.size(); }
+    public long getBatches() { return batches.get(); }
+    public long getRows() { return rows.get(); }
+    public long getRejected() { return rejected.get(); }
+    public long getFallbacks() { return fallbacks.get(); }
+
+    @Override
+    public String toString() {
+        return "WriteBehindQueue[queued=" + getQueueDepth() + ", batches=" + getBatches() + ", rows=" + getRows()
+                + ", rejected=" + getRejected() + ", fallbacks=" + getFallbacks() + "]";
+    }
+}